@@ -0,0 +1,22 @@
+package net.minecraftforge.fml.common.patcher;
+
+import net.minecraft.launchwrapper.LaunchClassLoader;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// stands in for the Forge class OptifineDevRemapper looks up on init, serves generated classes instead of patched ones
+public class ClassPatchManager {
+
+    public static final ClassPatchManager INSTANCE = new ClassPatchManager();
+
+    private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+    public void register(String name, byte[] code) {
+        classes.put(name, code);
+    }
+
+    public byte[] getPatchedResource(String name, String mappedName, LaunchClassLoader loader) {
+        return classes.get(name);
+    }
+}
@@ -0,0 +1,44 @@
+package ofdev.launchwrapper;
+
+import net.minecraftforge.fml.common.patcher.ClassPatchManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Sets up what {@link OptifineDevRemapper#notchMcp()} needs to load without ForgeGradle: a generated notch-mcp file in the
+ * system property GradleStart sets, and the generated Forge classes served by the stub ClassPatchManager.
+ * <p>
+ * Must be initialized before OptifineDevRemapper. The number of classes is {@code -Dofdev.bench.classes}, 4000 by default,
+ * about as many as 1.12.2 has. The mapping snapshot is skipped so that the mappings are always parsed from the file.
+ */
+final class BenchmarkFixture {
+
+    static final SyntheticMinecraft MINECRAFT = new SyntheticMinecraft(Integer.getInteger("ofdev.bench.classes", 4000));
+    static final Path NOTCH_MCP_FILE;
+
+    static {
+        try {
+            Path dir = Files.createTempDirectory("ofdev-bench");
+            NOTCH_MCP_FILE = MINECRAFT.writeSrg(dir.resolve("notch-mcp.srg"), SyntheticMinecraft.Namespace.NOTCH, SyntheticMinecraft.Namespace.MCP);
+            dir.toFile().deleteOnExit();
+            NOTCH_MCP_FILE.toFile().deleteOnExit();
+            System.setProperty("net.minecraftforge.gradle.GradleStart.srg.notch-mcp", NOTCH_MCP_FILE.toString());
+            System.setProperty("ofdev.skipMappingSnapshot", "true");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (int i = 0; i < MINECRAFT.classes(); i++) {
+            ClassPatchManager.INSTANCE.register(MINECRAFT.className(SyntheticMinecraft.Namespace.MCP, i), MINECRAFT.forgeClass(i));
+        }
+    }
+
+    private BenchmarkFixture() {
+    }
+
+    static OptifineDevRemapper remapper() {
+        return OptifineDevRemapper.notchMcp();
+    }
+}
@@ -0,0 +1,115 @@
+package ofdev.launchwrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single lookups in the loaded notch-mcp remapper, cycling through a fixed set of queries.
+ * <p>
+ * A hit is a name from the mappings. Half of the misses are JDK classes and members, the other half are members OptiFine added
+ * to mapped classes. Every query is made once in setup, so per class maps and negative caches are already filled, like they
+ * are for most of startup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OptifineDevRemapperBenchmark {
+
+    private static final int QUERIES = 4096;
+
+    @Param({"0.9", "0.5"})
+    public double hitRatio;
+
+    private OptifineDevRemapper remapper;
+
+    private final String[] methodOwners = new String[QUERIES];
+    private final String[] methodNames = new String[QUERIES];
+    private final String[] methodDescs = new String[QUERIES];
+    private final String[] fieldOwners = new String[QUERIES];
+    private final String[] fieldNames = new String[QUERIES];
+    private final String[] fieldDescs = new String[QUERIES];
+    private final String[] notchClasses = new String[QUERIES];
+    private final String[] mcpClasses = new String[QUERIES];
+    private int next;
+
+    @Setup
+    public void setup() {
+        remapper = BenchmarkFixture.remapper();
+        SyntheticMinecraft mc = BenchmarkFixture.MINECRAFT;
+        SyntheticMinecraft.Namespace notch = SyntheticMinecraft.Namespace.NOTCH;
+        SyntheticMinecraft.Namespace mcp = SyntheticMinecraft.Namespace.MCP;
+        Random random = new Random(42);
+        for (int q = 0; q < QUERIES; q++) {
+            int i = random.nextInt(mc.classes());
+            int m = random.nextInt(SyntheticMinecraft.METHODS);
+            int f = random.nextInt(SyntheticMinecraft.FIELDS);
+            if (random.nextDouble() < hitRatio) {
+                methodOwners[q] = mc.className(notch, i);
+                methodNames[q] = mc.methodName(notch, i, m);
+                methodDescs[q] = mc.methodDesc(notch, i, m);
+                fieldOwners[q] = mc.className(notch, i);
+                fieldNames[q] = mc.fieldName(notch, i, f);
+                fieldDescs[q] = mc.fieldDesc(notch, i, f);
+                notchClasses[q] = mc.className(notch, i);
+                mcpClasses[q] = mc.className(mcp, i);
+            } else if (random.nextBoolean()) {
+                methodOwners[q] = "java/util/ArrayList";
+                methodNames[q] = "add";
+                methodDescs[q] = "(Ljava/lang/Object;)Z";
+                fieldOwners[q] = "java/util/ArrayList";
+                fieldNames[q] = "size";
+                fieldDescs[q] = "I";
+                notchClasses[q] = "java/lang/String";
+                mcpClasses[q] = "java/lang/String";
+            } else {
+                methodOwners[q] = mc.className(notch, i);
+                methodNames[q] = "ofUpdate";
+                methodDescs[q] = "()V";
+                fieldOwners[q] = mc.className(notch, i);
+                fieldNames[q] = "ofCustomFlag";
+                fieldDescs[q] = "Z";
+                notchClasses[q] = "net/optifine/Config";
+                mcpClasses[q] = "net/optifine/Config";
+            }
+        }
+        for (int q = 0; q < QUERIES; q++) {
+            remapper.mapMethodName(methodOwners[q], methodNames[q], methodDescs[q]);
+            remapper.mapFieldName(fieldOwners[q], fieldNames[q], fieldDescs[q]);
+        }
+    }
+
+    private int nextQuery() {
+        return next++ & (QUERIES - 1);
+    }
+
+    @Benchmark
+    public String mapMethodName() {
+        int q = nextQuery();
+        return remapper.mapMethodName(methodOwners[q], methodNames[q], methodDescs[q]);
+    }
+
+    @Benchmark
+    public String mapFieldName() {
+        int q = nextQuery();
+        return remapper.mapFieldName(fieldOwners[q], fieldNames[q], fieldDescs[q]);
+    }
+
+    @Benchmark
+    public String map() {
+        return remapper.map(notchClasses[nextQuery()]);
+    }
+
+    @Benchmark
+    public String unmap() {
+        return remapper.unmap(mcpClasses[nextQuery()]);
+    }
+}
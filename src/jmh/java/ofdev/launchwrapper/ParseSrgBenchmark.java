@@ -0,0 +1,53 @@
+package ofdev.launchwrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// parsing of the whole generated notch-mcp file, mapped the same way setup does it, into fresh tables. Field types are looked up
+// once and then cached
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParseSrgBenchmark {
+
+    // false is how srg-mcp files are parsed for ForgeGradle 3
+    @Param({"true", "false"})
+    public boolean withSignatureKey;
+
+    private OptifineDevRemapper remapper;
+    private Path file;
+
+    @Setup
+    public void setup() {
+        remapper = BenchmarkFixture.remapper();
+        file = BenchmarkFixture.NOTCH_MCP_FILE;
+    }
+
+    @Benchmark
+    public void parseSrg(Blackhole bh) throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        Map<String, MemberMap> methodMaps = new HashMap<>();
+        Map<String, MemberMap> fieldMaps = new HashMap<>();
+        Map<String, String> classMap = new HashMap<>();
+        Map<String, String> classMapInverse = new HashMap<>();
+        remapper.parseMappings(MappingSource.map(file), symbols, methodMaps, fieldMaps, classMap, classMapInverse, withSignatureKey);
+        bh.consume(symbols);
+        bh.consume(methodMaps);
+        bh.consume(fieldMaps);
+        bh.consume(classMap);
+        bh.consume(classMapInverse);
+    }
+}
@@ -0,0 +1,262 @@
+package ofdev.launchwrapper;
+
+import net.minecraft.launchwrapper.IClassTransformer;
+import net.minecraft.launchwrapper.Launch;
+import net.minecraft.launchwrapper.LaunchClassLoader;
+import ofdev.common.TransformMetrics;
+import ofdev.common.Utils;
+import ofdev.launchwrapper.SyntheticMinecraft.Namespace;
+import ofdev.modlauncher.ModLauncherStartup;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Whole startup of the LaunchWrapper or ModLauncher side against generated fixtures, see {@link StartupFixtures}. Reports
+ * classes per second, wall time and peak heap, so scaling can be measured without the game.
+ * <p>
+ * {@code StartupBenchmark [--classes N] [--launcher launchwrapper|modlauncher] [--dir path] [--cold]}
+ * <p>
+ * N is the number of Minecraft classes, 5000 by default, OptiFine patches a fourth of them and adds a fifth as many of its own.
+ * Caches are kept in the fixture directory, so a second run with the same arguments measures a warm start unless it's
+ * started with --cold. Each run needs a new JVM, the transformers can only be initialized once.
+ */
+public final class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int classes = 5000;
+        String launcher = "launchwrapper";
+        Path dir = Paths.get("build", "startup-benchmark");
+        boolean cold = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--classes":
+                    classes = Integer.parseInt(args[++i]);
+                    break;
+                case "--launcher":
+                    launcher = args[++i];
+                    break;
+                case "--dir":
+                    dir = Paths.get(args[++i]);
+                    break;
+                case "--cold":
+                    cold = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + args[i]
+                            + ", expected --classes N, --launcher launchwrapper|modlauncher, --dir path or --cold");
+            }
+        }
+        if (!launcher.equals("launchwrapper") && !launcher.equals("modlauncher")) {
+            throw new IllegalArgumentException("Unknown launcher " + launcher);
+        }
+
+        long generateStart = System.nanoTime();
+        StartupFixtures fixtures = StartupFixtures.open(dir.toAbsolutePath(), classes);
+        System.out.printf("Fixtures for %d classes in %s ready in %d ms%n", classes, fixtures.dir, millis(System.nanoTime() - generateStart));
+
+        // before anything reads them
+        System.setProperty("java.awt.headless", "true");
+        setDefault("ofdev.cacheDir", fixtures.cacheDir.toString());
+        setDefault("ofdev.mcjar", fixtures.minecraftJar.toString());
+        setDefault("ofdev.dump", "off");
+        setDefault("net.minecraftforge.gradle.GradleStart.srg.notch-mcp", fixtures.notchMcp.toString());
+
+        if (cold) {
+            Utils.rm(fixtures.cacheDir);
+        }
+        boolean warm = hasCachedClasses(fixtures.cacheDir, launcher);
+
+        System.gc();
+        resetPeakHeap();
+        long start = System.nanoTime();
+        Result result = launcher.equals("launchwrapper") ? runLaunchWrapper(fixtures) : runModLauncher(fixtures);
+        long total = System.nanoTime() - start;
+
+        System.out.printf("%s, %s cache%n", launcher, warm ? "warm" : "cold");
+        System.out.printf("  setup:      %d ms%n", millis(result.setupNanos));
+        System.out.printf("  transform:  %d classes in %d ms, %.0f classes/s%n", result.classes, millis(result.transformNanos),
+                result.classes / (result.transformNanos / 1e9));
+        System.out.printf("  total wall: %d ms%n", millis(total));
+        System.out.printf("  peak heap:  %.1f MiB%n", peakHeap() / (1024.0 * 1024.0));
+        if (TransformMetrics.ENABLED) {
+            TransformMetrics metrics = new TransformMetrics();
+            for (String line : metrics.getStages()) {
+                System.out.println("  " + line);
+            }
+            for (String line : metrics.getCounters()) {
+                System.out.println("  " + line);
+            }
+        }
+    }
+
+    private static Result runLaunchWrapper(StartupFixtures fixtures) throws IOException {
+        SyntheticMinecraft mc = fixtures.minecraft;
+        // what LaunchClassLoader finds on classpath: deobfuscated Forge classes and OptiFine's own classes
+        Map<String, byte[]> classpath = new HashMap<>();
+        List<String> loadOrder = new ArrayList<>();
+        for (int i = 0; i < mc.classes(); i++) {
+            String name = mc.className(Namespace.MCP, i).replace('/', '.');
+            classpath.put(name, mc.forgeClass(i));
+            loadOrder.add(name);
+        }
+        ZipFile optifineZip = new ZipFile(fixtures.optifineJarLW.toFile());
+        for (int k = 0; k < mc.optifineOnlyClasses(); k++) {
+            String name = mc.optifineOnlyClassName(k);
+            classpath.put(name.replace('/', '.'), StartupFixtures.read(optifineZip, optifineZip.getEntry(name + ".class")));
+            loadOrder.add(name.replace('/', '.'));
+        }
+        Launch.blackboard = new HashMap<>();
+        Launch.classLoader = new StandInClassLoader(classpath);
+
+        long start = System.nanoTime();
+        // loads mappings and indexes the Minecraft jar
+        OptifineDevTransformerWrapper wrapper = new OptifineDevTransformerWrapper();
+        // what OptifineDevTweakerWrapper.initOptiTransformer does once OptiFine's transformer exists
+        OptifineDevTransformerWrapper.ofTransformer = new StandInOptiFineTransformer(optifineZip);
+        OptifineDevTransformerWrapper.initTransformCache(fixtures.optifineJarLW);
+        OptifineDevTransformerWrapper.startWarmup(optifineZip);
+        long setup = System.nanoTime() - start;
+
+        int transformed = 0;
+        for (String name : loadOrder) {
+            if (wrapper.transform(name, name, Launch.classLoader.getClassBytes(name)) != null) {
+                transformed++;
+            }
+        }
+        return new Result(setup, System.nanoTime() - start - setup, transformed);
+    }
+
+    private static Result runModLauncher(StartupFixtures fixtures) throws Exception {
+        long start = System.nanoTime();
+        ModLauncherStartup startup = ModLauncherStartup.initialize(fixtures);
+        long setup = System.nanoTime() - start;
+        int transformed = startup.transformAll();
+        return new Result(setup, System.nanoTime() - start - setup, transformed);
+    }
+
+    private static void setDefault(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    // transform caches are in classes/<launcher>-<fingerprint>
+    private static boolean hasCachedClasses(Path cacheDir, String launcher) throws IOException {
+        Path classes = cacheDir.resolve("classes");
+        if (!Files.isDirectory(classes)) {
+            return false;
+        }
+        try (Stream<Path> files = Files.walk(classes)) {
+            return files.anyMatch(file -> Files.isRegularFile(file) && classes.relativize(file).toString().startsWith(launcher + "-"));
+        }
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    // sum of the peaks of each pool, a bit more than the real peak when the pools peaked at different times
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static final class Result {
+        final long setupNanos;
+        final long transformNanos;
+        final int classes;
+
+        Result(long setupNanos, long transformNanos, int classes) {
+            this.setupNanos = setupNanos;
+            this.transformNanos = transformNanos;
+            this.classes = classes;
+        }
+    }
+
+    // classes come from memory instead of jars on classpath, the only class ever defined is OptiFine's transformer
+    private static final class StandInClassLoader extends LaunchClassLoader {
+
+        private static final String OPTIFINE_TRANSFORMER = "optifine.OptiFineClassTransformer";
+
+        private final Map<String, byte[]> classes;
+
+        StandInClassLoader(Map<String, byte[]> classes) {
+            super(new URL[0]);
+            this.classes = classes;
+        }
+
+        @Override public byte[] getClassBytes(String name) {
+            return classes.get(name);
+        }
+
+        // OptifineDevTweakerWrapper loads it on init, the real one is replaced by StandInOptiFineTransformer anyway
+        @Override public Class<?> findClass(String name) throws ClassNotFoundException {
+            if (!name.equals(OPTIFINE_TRANSFORMER)) {
+                throw new ClassNotFoundException(name);
+            }
+            synchronized (this) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded != null) {
+                    return loaded;
+                }
+                ClassWriter cw = new ClassWriter(0);
+                cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name.replace('.', '/'), null, "java/lang/Object", null);
+                cw.visitEnd();
+                byte[] code = cw.toByteArray();
+                return defineClass(name, code, 0, code.length);
+            }
+        }
+    }
+
+    // like OptiFine's transformer, replaces a class with the one in OptiFine jar if there is one
+    private static final class StandInOptiFineTransformer implements IClassTransformer {
+
+        private final ZipFile optifineZip;
+
+        StandInOptiFineTransformer(ZipFile optifineZip) {
+            this.optifineZip = optifineZip;
+        }
+
+        @Override public byte[] transform(String name, String transformedName, byte[] basicClass) {
+            ZipEntry entry = name == null ? null : optifineZip.getEntry(name.replace('.', '/') + ".class");
+            if (entry == null) {
+                return basicClass;
+            }
+            try {
+                return StartupFixtures.read(optifineZip, entry);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package ofdev.launchwrapper;
+
+import ofdev.launchwrapper.SyntheticMinecraft.Namespace;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Files of a synthetic game directory for {@link StartupBenchmark}: a Minecraft jar, notch-srg, srg-mcp and notch-mcp
+ * mappings, and OptiFine jars for LaunchWrapper (notch named) and ModLauncher (srg named, in mods directory).
+ * <p>
+ * Generated files are kept and reused while the number of classes stays the same, so that a second run can measure warm caches.
+ */
+public final class StartupFixtures {
+
+    public final SyntheticMinecraft minecraft;
+    public final Path dir;
+    public final Path minecraftJar;
+    public final Path notchSrg;
+    public final Path srgMcp;
+    public final Path notchMcp;
+    public final Path optifineJarLW;
+    public final Path gameDir;
+    public final Path optifineJarML;
+    public final Path cacheDir;
+
+    private StartupFixtures(Path dir, int classes) {
+        this.minecraft = new SyntheticMinecraft(classes);
+        this.dir = dir;
+        this.minecraftJar = dir.resolve("minecraft.jar");
+        this.notchSrg = dir.resolve("mappings").resolve("notch-srg.srg");
+        this.srgMcp = dir.resolve("mappings").resolve("srg-mcp.srg");
+        this.notchMcp = dir.resolve("mappings").resolve("notch-mcp.srg");
+        this.optifineJarLW = dir.resolve("OptiFine_launchwrapper.jar");
+        this.gameDir = dir.resolve("run");
+        this.optifineJarML = gameDir.resolve("mods").resolve("OptiFine_modlauncher.jar");
+        this.cacheDir = dir.resolve("cache");
+    }
+
+    public static StartupFixtures open(Path dir, int classes) throws IOException {
+        StartupFixtures fixtures = new StartupFixtures(dir, classes);
+        Path info = dir.resolve("fixtures.properties");
+        Properties properties = new Properties();
+        if (Files.exists(info)) {
+            try (InputStream in = Files.newInputStream(info)) {
+                properties.load(in);
+            }
+        }
+        if (!String.valueOf(classes).equals(properties.getProperty("classes"))) {
+            fixtures.generate();
+            properties.setProperty("classes", String.valueOf(classes));
+            try (OutputStream out = Files.newOutputStream(info)) {
+                properties.store(out, "synthetic startup fixtures");
+            }
+        }
+        return fixtures;
+    }
+
+    private void generate() throws IOException {
+        Files.createDirectories(optifineJarML.getParent());
+        minecraft.writeSrg(notchSrg, Namespace.NOTCH, Namespace.SRG);
+        minecraft.writeSrg(srgMcp, Namespace.SRG, Namespace.MCP);
+        // what ForgeGradle 2 makes out of the other two
+        minecraft.writeSrg(notchMcp, Namespace.NOTCH, Namespace.MCP);
+
+        try (ZipOutputStream zip = newZip(minecraftJar)) {
+            for (int i = 0; i < minecraft.classes(); i++) {
+                put(zip, minecraft.className(Namespace.NOTCH, i) + ".class", minecraft.vanillaClass(i));
+            }
+            put(zip, "assets/minecraft/lang/en_us.lang", "menu.game=Game Menu\n".getBytes(StandardCharsets.UTF_8));
+        }
+        writeOptifine(optifineJarLW, Namespace.NOTCH, "");
+        writeOptifine(optifineJarML, Namespace.SRG, "srg/");
+    }
+
+    private void writeOptifine(Path jar, Namespace ns, String patchedPrefix) throws IOException {
+        try (ZipOutputStream zip = newZip(jar)) {
+            for (int i = 0; i < minecraft.classes(); i++) {
+                if (minecraft.patchedByOptifine(i)) {
+                    put(zip, patchedPrefix + minecraft.className(ns, i) + ".class", minecraft.optifineClass(ns, i));
+                }
+            }
+            for (int k = 0; k < minecraft.optifineOnlyClasses(); k++) {
+                put(zip, minecraft.optifineOnlyClassName(k) + ".class", minecraft.optifineOnlyClass(ns, k));
+            }
+        }
+    }
+
+    public static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+        byte[] data = new byte[(int) entry.getSize()];
+        try (InputStream in = zip.getInputStream(entry)) {
+            int n = 0;
+            while (n < data.length) {
+                int read = in.read(data, n, data.length - n);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + entry.getName());
+                }
+                n += read;
+            }
+        }
+        return data;
+    }
+
+    private static ZipOutputStream newZip(Path file) throws IOException {
+        return new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+    }
+
+    private static void put(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+}
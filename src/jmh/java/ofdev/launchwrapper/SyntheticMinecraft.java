@@ -0,0 +1,310 @@
+package ofdev.launchwrapper;
+
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PROTECTED;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.ICONST_0;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.IRETURN;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.V1_8;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generated stand-in for Minecraft classes and their mappings, same shape as the real thing but without any game files.
+ * <p>
+ * Notch names are short and reused between classes, methods are overloaded by descriptor and every fourth class starts a new
+ * inheritance chain, overrides in a chain share their srg and MCP names. Every fifth srg name has no MCP name, like in
+ * real MCP snapshots. Private members are made public in the Forge version of a class, the way access transformers do.
+ */
+public final class SyntheticMinecraft {
+
+    public static final int METHODS = 8;
+    public static final int FIELDS = 6;
+
+    public enum Namespace {
+        NOTCH, SRG, MCP
+    }
+
+    private final int classes;
+
+    public SyntheticMinecraft(int classes) {
+        this.classes = classes;
+    }
+
+    public int classes() {
+        return classes;
+    }
+
+    public String className(Namespace ns, int i) {
+        // srg class names are already MCP names
+        return ns == Namespace.NOTCH ? shortName(i) : "net/minecraft/bench/p" + (i / 100) + "/Class" + i;
+    }
+
+    public String fieldName(Namespace ns, int i, int j) {
+        int id = i * FIELDS + j;
+        switch (ns) {
+            case NOTCH:
+                return shortName(j);
+            case SRG:
+                return "field_" + id + "_" + shortName(j);
+            default:
+                return id % 5 == 4 ? fieldName(Namespace.SRG, i, j) : "field" + id;
+        }
+    }
+
+    public String methodName(Namespace ns, int i, int j) {
+        int id = chainRoot(i) * METHODS + j;
+        switch (ns) {
+            case NOTCH:
+                return shortName(j / 2);
+            case SRG:
+                return "func_" + id + "_" + shortName(j / 2);
+            default:
+                return id % 5 == 4 ? methodName(Namespace.SRG, i, j) : "method" + id;
+        }
+    }
+
+    public String fieldDesc(Namespace ns, int i, int j) {
+        switch (j % 3) {
+            case 0:
+                return "I";
+            case 1:
+                return "L" + className(ns, other(i, j)) + ";";
+            default:
+                return "[J";
+        }
+    }
+
+    public String methodDesc(Namespace ns, int i, int j) {
+        // overriding methods need the same descriptor in every class of the chain
+        int root = chainRoot(i);
+        switch (j % 4) {
+            case 0:
+                return "()V";
+            case 1:
+                return "(I)I";
+            case 2:
+                return "(L" + className(ns, other(root, j)) + ";)V";
+            default:
+                return "()L" + className(ns, other(root, j)) + ";";
+        }
+    }
+
+    public String superName(Namespace ns, int i) {
+        return i == chainRoot(i) ? "java/lang/Object" : className(ns, i - 1);
+    }
+
+    private int other(int i, int j) {
+        return (i * 31 + j * 7 + 1) % classes;
+    }
+
+    private static int chainRoot(int i) {
+        return i - i % 4;
+    }
+
+    private static String shortName(int i) {
+        StringBuilder sb = new StringBuilder();
+        do {
+            sb.append((char) ('a' + i % 26));
+            i = i / 26 - 1;
+        } while (i >= 0);
+        return sb.reverse().toString();
+    }
+
+    /**
+     * @return lines of an SRG file mapping the first namespace to the second
+     */
+    public List<String> srgLines(Namespace from, Namespace to) {
+        List<String> lines = new ArrayList<>(classes * (1 + FIELDS + METHODS) + 1);
+        lines.add("PK: ./ net/minecraft/bench");
+        for (int i = 0; i < classes; i++) {
+            String fromClass = className(from, i);
+            String toClass = className(to, i);
+            lines.add("CL: " + fromClass + " " + toClass);
+            for (int j = 0; j < FIELDS; j++) {
+                lines.add("FD: " + fromClass + "/" + fieldName(from, i, j) + " " + toClass + "/" + fieldName(to, i, j));
+            }
+            for (int j = 0; j < METHODS; j++) {
+                lines.add("MD: " + fromClass + "/" + methodName(from, i, j) + " " + methodDesc(from, i, j) + " "
+                        + toClass + "/" + methodName(to, i, j) + " " + methodDesc(to, i, j));
+            }
+        }
+        return lines;
+    }
+
+    public Path writeSrg(Path file, Namespace from, Namespace to) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        return Files.write(file, srgLines(from, to), StandardCharsets.UTF_8);
+    }
+
+    public byte[] vanillaClass(int i) {
+        return generate(Namespace.NOTCH, i, false, false);
+    }
+
+    // vanilla with a few additions, like a class OptiFine patched
+    public byte[] optifineClass(int i) {
+        return optifineClass(Namespace.NOTCH, i);
+    }
+
+    // OptiFine for LaunchWrapper ships notch named classes, for ModLauncher srg named ones
+    public byte[] optifineClass(Namespace ns, int i) {
+        return generate(ns, i, false, true);
+    }
+
+    // roughly the share of Minecraft classes OptiFine replaces
+    public boolean patchedByOptifine(int i) {
+        return i % 4 == 0;
+    }
+
+    // OptiFine's own classes, about a fifth of the number of Minecraft classes
+    public int optifineOnlyClasses() {
+        return Math.max(1, classes / 5);
+    }
+
+    public String optifineOnlyClassName(int k) {
+        return "net/optifine/bench/Generated" + k;
+    }
+
+    // a class of OptiFine that uses a Minecraft class, which is in the namespace OptiFine was compiled against
+    public byte[] optifineOnlyClass(Namespace ns, int k) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        String name = optifineOnlyClassName(k);
+        int i = other(k, 0);
+        String type = className(ns, i);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+        cw.visitField(ACC_PRIVATE, "target", "L" + type + ";", null, null).visitEnd();
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        // method 1 is public in every class
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "update", "()I", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, name, "target", "L" + type + ";");
+        mv.visitInsn(ICONST_0);
+        mv.visitMethodInsn(INVOKEVIRTUAL, type, methodName(ns, i, 1), methodDesc(ns, i, 1), false);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    // MCP named with access transformers applied, like a class Forge gives to transformers in a dev environment
+    public byte[] forgeClass(int i) {
+        return generate(Namespace.MCP, i, true, false);
+    }
+
+    private static boolean privateField(int j) {
+        return j % 2 == 0;
+    }
+
+    private static boolean privateMethod(int j) {
+        return j % 3 == 0;
+    }
+
+    private byte[] generate(Namespace ns, int i, boolean accessTransformed, boolean optifine) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        String name = className(ns, i);
+        String superName = superName(ns, i);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, superName, null);
+
+        for (int j = 0; j < FIELDS; j++) {
+            int access = privateField(j) ? ACC_PRIVATE : ACC_PROTECTED;
+            if (accessTransformed && j % 4 == 0) {
+                access = ACC_PUBLIC;
+            }
+            FieldVisitor fv = cw.visitField(access, fieldName(ns, i, j), fieldDesc(ns, i, j), null, null);
+            fv.visitEnd();
+        }
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, superName, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        for (int j = 0; j < METHODS; j++) {
+            int access = privateMethod(j) ? ACC_PRIVATE : ACC_PUBLIC;
+            if (accessTransformed && j % 6 == 0) {
+                access = ACC_PUBLIC;
+            }
+            MethodVisitor mv = cw.visitMethod(access, methodName(ns, i, j), methodDesc(ns, i, j), null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, name, fieldName(ns, i, j % FIELDS), fieldDesc(ns, i, j % FIELDS));
+            mv.visitInsn(POP);
+            invoke(mv, ns, i, (j + 1) % METHODS, accessTransformed);
+            switch (j % 4) {
+                case 1:
+                    mv.visitInsn(ICONST_0);
+                    mv.visitInsn(IRETURN);
+                    break;
+                case 3:
+                    mv.visitInsn(ACONST_NULL);
+                    mv.visitInsn(ARETURN);
+                    break;
+                default:
+                    mv.visitInsn(RETURN);
+            }
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        if (optifine) {
+            // OptiFine adds members with names that aren't in any mapping
+            cw.visitField(ACC_PUBLIC, "ofCustomFlag", "Z", null, null).visitEnd();
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "ofUpdate", "()V", null, null);
+            mv.visitCode();
+            invoke(mv, ns, i, 0, false);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private void invoke(MethodVisitor mv, Namespace ns, int i, int j, boolean accessTransformed) {
+        mv.visitVarInsn(ALOAD, 0);
+        switch (j % 4) {
+            case 1:
+                mv.visitInsn(ICONST_0);
+                break;
+            case 2:
+                mv.visitInsn(ACONST_NULL);
+                break;
+        }
+        boolean special = privateMethod(j) && !(accessTransformed && j % 6 == 0);
+        mv.visitMethodInsn(special ? INVOKESPECIAL : INVOKEVIRTUAL, className(ns, i), methodName(ns, i, j), methodDesc(ns, i, j), false);
+        if (j % 4 == 1 || j % 4 == 3) {
+            mv.visitInsn(POP);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ofdev.launchwrapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deobfuscation of OptiFine classes together with reapplying access transformers, what the LaunchWrapper transformer does
+ * for each class after OptiFine transformed it. Time is per class.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransformBenchmark {
+
+    private static final int CLASSES = 256;
+
+    private final String[] names = new String[CLASSES];
+    private final byte[][] optifine = new byte[CLASSES][];
+    private final byte[][] vanilla = new byte[CLASSES][];
+    private final byte[][] forge = new byte[CLASSES][];
+
+    @Setup
+    public void setup() {
+        BenchmarkFixture.remapper();
+        SyntheticMinecraft mc = BenchmarkFixture.MINECRAFT;
+        // spread over the whole mapping, neighbouring classes are in the same inheritance chain
+        int step = Math.max(1, mc.classes() / CLASSES);
+        for (int c = 0; c < CLASSES; c++) {
+            int i = (c * step) % mc.classes();
+            names[c] = mc.className(SyntheticMinecraft.Namespace.MCP, i).replace('/', '.');
+            optifine[c] = mc.optifineClass(i);
+            vanilla[c] = mc.vanillaClass(i);
+            forge[c] = mc.forgeClass(i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CLASSES)
+    public void transform(Blackhole bh) {
+        for (int c = 0; c < CLASSES; c++) {
+            bh.consume(TransformPipeline.transform(names[c], optifine[c], vanilla[c], forge[c], null));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package ofdev.modlauncher;
+
+import cpw.mods.modlauncher.api.IEnvironment;
+import cpw.mods.modlauncher.api.INameMappingService;
+import ofdev.launchwrapper.StartupFixtures;
+import ofdev.launchwrapper.SyntheticMinecraft;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * ModLauncher side of {@link ofdev.launchwrapper.StartupBenchmark}. Does what onLoad finds out from ModLauncher internals
+ * directly, and passes classes through the same calls the generated OptiFine transformer and OFDevRetransformer make.
+ */
+public final class ModLauncherStartup {
+
+    private final StartupFixtures fixtures;
+    private final OFDevRetransformer retransformer;
+
+    private ModLauncherStartup(StartupFixtures fixtures, OFDevRetransformer retransformer) {
+        this.fixtures = fixtures;
+        this.retransformer = retransformer;
+    }
+
+    public static ModLauncherStartup initialize(StartupFixtures fixtures) throws IOException, ReflectiveOperationException {
+        IEnvironment env = environment(fixtures, srg2mcp(fixtures.srgMcp));
+        // onLoad, without an AccessFixer like old OptiFine versions
+        setStatic("env", env);
+        setStatic("optifineJar", fixtures.optifineJarML.toAbsolutePath());
+        setStatic("fixMemberAccess", (BiConsumer<ClassNode, ClassNode>) (original, transformed) -> {
+        });
+        new OFDevTransformationService().initialize(env);
+        return new ModLauncherStartup(fixtures, new OFDevRetransformer(env));
+    }
+
+    /**
+     * @return number of transformed classes
+     */
+    public int transformAll() throws IOException {
+        SyntheticMinecraft mc = fixtures.minecraft;
+        int transformed = 0;
+        try (ZipFile optifineZip = new ZipFile(fixtures.optifineJarML.toFile())) {
+            for (int i = 0; i < mc.classes(); i++) {
+                if (!mc.patchedByOptifine(i)) {
+                    continue;
+                }
+                ClassNode original = classNode(mc.forgeClass(i));
+                // DevOptiFineTransformer.transform
+                ClassNode output = OFDevTransformationService.findCachedTransform(original);
+                if (output == null) {
+                    output = OFDevTransformationService.wrapOptiFineTransform(optifineTransform(optifineZip, original), original);
+                }
+                // patched classes are in OptiFine jar, so they are retransformer targets too
+                retransformer.transform(output, null);
+                transformed++;
+            }
+            for (int k = 0; k < mc.optifineOnlyClasses(); k++) {
+                ZipEntry entry = optifineZip.getEntry(mc.optifineOnlyClassName(k) + ".class");
+                retransformer.transform(classNode(StartupFixtures.read(optifineZip, entry)), null);
+                transformed++;
+            }
+        }
+        return transformed;
+    }
+
+    // like OptiFineTransformer, replaces the class with the srg named one in OptiFine jar
+    private static ClassNode optifineTransform(ZipFile optifineZip, ClassNode input) throws IOException {
+        ZipEntry entry = optifineZip.getEntry("srg/" + input.name + ".class");
+        return entry == null ? input : classNode(StartupFixtures.read(optifineZip, entry));
+    }
+
+    private static ClassNode classNode(byte[] code) {
+        ClassNode node = new ClassNode();
+        new ClassReader(code).accept(node, ClassReader.EXPAND_FRAMES);
+        return node;
+    }
+
+    private static void setStatic(String name, Object value) throws ReflectiveOperationException {
+        Field field = OFDevTransformationService.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(null, value);
+    }
+
+    // stands in for the name mapping service of Forge, the member names of the srg-mcp file by domain
+    private static BiFunction<INameMappingService.Domain, String, String> srg2mcp(Path srgMcp) throws IOException {
+        Map<String, String> methods = new HashMap<>();
+        Map<String, String> fields = new HashMap<>();
+        for (String line : Files.readAllLines(srgMcp, StandardCharsets.UTF_8)) {
+            String[] parts = line.split(" ");
+            if (parts[0].equals("FD:")) {
+                fields.put(memberName(parts[1]), memberName(parts[2]));
+            } else if (parts[0].equals("MD:")) {
+                methods.put(memberName(parts[1]), memberName(parts[3]));
+            }
+        }
+        return (domain, name) -> {
+            Map<String, String> names = domain == INameMappingService.Domain.METHOD ? methods
+                    : domain == INameMappingService.Domain.FIELD ? fields : Collections.emptyMap();
+            return names.getOrDefault(name, name);
+        };
+    }
+
+    private static String memberName(String owned) {
+        return owned.substring(owned.lastIndexOf('/') + 1);
+    }
+
+    private static IEnvironment environment(StartupFixtures fixtures, BiFunction<INameMappingService.Domain, String, String> srg2mcp) {
+        Map<String, String> optifine = new HashMap<>();
+        optifine.put("name", "OptiFine");
+        optifine.put("type", "TRANSFORMATIONSERVICE");
+        optifine.put("file", fixtures.optifineJarML.getFileName().toString());
+        List<Map<String, String>> modList = Collections.singletonList(optifine);
+
+        Map<Object, Object> properties = new HashMap<>();
+        properties.put(IEnvironment.Keys.GAMEDIR.get(), fixtures.gameDir);
+        properties.put(IEnvironment.Keys.MODLIST.get(), modList);
+        return (IEnvironment) Proxy.newProxyInstance(IEnvironment.class.getClassLoader(), new Class<?>[]{IEnvironment.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getProperty":
+                            return Optional.ofNullable(properties.get(args[0]));
+                        case "findNameMapping":
+                            return "srg".equals(args[0]) ? Optional.of(srg2mcp) : Optional.empty();
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "toString":
+                            return "StandInEnvironment";
+                        default:
+                            return method.getReturnType() == Optional.class ? Optional.empty() : null;
+                    }
+                });
+    }
+}
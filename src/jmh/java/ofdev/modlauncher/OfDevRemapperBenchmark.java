@@ -0,0 +1,85 @@
+package ofdev.modlauncher;
+
+import cpw.mods.modlauncher.api.INameMappingService;
+import ofdev.launchwrapper.SyntheticMinecraft;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Method lookups of the ModLauncher remapper, with a srg2mcp function over hash maps in place of the one from Forge.
+ * <p>
+ * A hit is a srg method name. Half of the misses are names that were never obfuscated, the other half are srg field names
+ * looked up as methods, like record components, which take a second lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OfDevRemapperBenchmark {
+
+    private static final int QUERIES = 4096;
+    private static final String[] UNMAPPED = {"<init>", "toString", "lambda$tick$3", "values", "access$000"};
+
+    @Param({"0.9", "0.5"})
+    public double hitRatio;
+
+    private OfDevRemapper remapper;
+
+    private final String[] owners = new String[QUERIES];
+    private final String[] names = new String[QUERIES];
+    private final String[] descs = new String[QUERIES];
+    private int next;
+
+    @Setup
+    public void setup() {
+        SyntheticMinecraft mc = new SyntheticMinecraft(Integer.getInteger("ofdev.bench.classes", 4000));
+        SyntheticMinecraft.Namespace srg = SyntheticMinecraft.Namespace.SRG;
+        SyntheticMinecraft.Namespace mcp = SyntheticMinecraft.Namespace.MCP;
+        Map<String, String> methods = new HashMap<>();
+        Map<String, String> fields = new HashMap<>();
+        for (int i = 0; i < mc.classes(); i++) {
+            for (int j = 0; j < SyntheticMinecraft.METHODS; j++) {
+                methods.put(mc.methodName(srg, i, j), mc.methodName(mcp, i, j));
+            }
+            for (int j = 0; j < SyntheticMinecraft.FIELDS; j++) {
+                fields.put(mc.fieldName(srg, i, j), mc.fieldName(mcp, i, j));
+            }
+        }
+        remapper = new OfDevRemapper((domain, name) ->
+                (domain == INameMappingService.Domain.METHOD ? methods : fields).getOrDefault(name, name));
+
+        Random random = new Random(42);
+        for (int q = 0; q < QUERIES; q++) {
+            int i = random.nextInt(mc.classes());
+            owners[q] = mc.className(srg, i);
+            if (random.nextDouble() < hitRatio) {
+                int j = random.nextInt(SyntheticMinecraft.METHODS);
+                names[q] = mc.methodName(srg, i, j);
+                descs[q] = mc.methodDesc(srg, i, j);
+            } else if (random.nextBoolean()) {
+                names[q] = UNMAPPED[random.nextInt(UNMAPPED.length)];
+                descs[q] = "()V";
+            } else {
+                int j = random.nextInt(SyntheticMinecraft.FIELDS);
+                names[q] = mc.fieldName(srg, i, j);
+                descs[q] = "()" + mc.fieldDesc(srg, i, j);
+            }
+        }
+    }
+
+    @Benchmark
+    public String mapMethodName() {
+        int q = next++ & (QUERIES - 1);
+        return remapper.mapMethodName(owners[q], names[q], descs[q]);
+    }
+}
@@ -0,0 +1,252 @@
+package ofdev.common;
+
+import static ofdev.common.Utils.LOGGER;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Decides which transformed classes are dumped and when.
+ * <ul>
+ *     <li>{@code -Dofdev.dump=always} dumps every class as it's transformed, the default</li>
+ *     <li>{@code -Dofdev.dump=retain} keeps compressed classes in memory, to be dumped on request through JMX</li>
+ *     <li>{@code -Dofdev.dump=off} doesn't dump anything unless dumping is started through JMX,
+ *     the default with {@code -Dofdev.profile=fast} or {@code -Dofdev.skipDumpClasses=true}</li>
+ * </ul>
+ * {@code -Dofdev.dumpInclude} and {@code -Dofdev.dumpExclude} are comma separated class name prefixes, like
+ * {@code net.minecraft.client.renderer.}, exclude wins. When a class is excluded or not dumped at all, its bytecode is never
+ * serialized just for the dump.
+ * <p>
+ * Registered as MBean {@code ofdev:type=ClassDump}, see {@link ClassDumpMBean}.
+ */
+public class ClassDump implements ClassDumpMBean {
+
+    public enum Mode {
+        ALWAYS, RETAIN, OFF
+    }
+
+    private static final Mode INITIAL_MODE = initialMode();
+    private static volatile Mode mode = INITIAL_MODE;
+    private static volatile String[] include = patterns(System.getProperty("ofdev.dumpInclude"));
+    private static volatile String[] exclude = patterns(System.getProperty("ofdev.dumpExclude"));
+
+    private static final Map<String, Retained> retained = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Deflater> deflater = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+
+    static {
+        Utils.registerMBean(new ClassDump(), "ofdev:type=ClassDump");
+    }
+
+    private static Mode initialMode() {
+        if (!Utils.DUMP_CLASSES) {
+            return Mode.OFF;
+        }
+        String dump = System.getProperty("ofdev.dump");
+        if (dump != null) {
+            try {
+                return Mode.valueOf(dump.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                LOGGER.warn("Unknown ofdev.dump mode {}, expected always, retain or off", dump);
+            }
+        }
+        return "fast".equals(System.getProperty("ofdev.profile")) ? Mode.OFF : Mode.ALWAYS;
+    }
+
+    /**
+     * Called at startup with the dump location. A run that doesn't dump classes as they are transformed would leave the dump of an
+     * earlier run that no longer matches the game, so it's removed. It's moved aside and deleted in the background, so that it doesn't
+     * slow down startup and a dump started through JMX gets an empty directory. When always dumping, ClassDumpWriter keeps unchanged
+     * classes and prunes the rest at shutdown instead.
+     */
+    public static void prepare(Path location) {
+        if (INITIAL_MODE == Mode.ALWAYS || !Files.exists(location)) {
+            return;
+        }
+        String staleName = location.getFileName() + ".stale";
+        try {
+            Files.move(location, location.resolveSibling(staleName + System.nanoTime()));
+        } catch (IOException e) {
+            LOGGER.warn("Could not move class dump at {} aside, deleting it now: {}", location, e.toString());
+            try {
+                Utils.rm(location);
+            } catch (IOException ex) {
+                LOGGER.warn("Could not delete class dump at {}: {}", location, ex.toString());
+            }
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            // also what earlier runs didn't get to delete
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(location.getParent(), staleName + "*")) {
+                for (Path dir : stale) {
+                    Utils.rm(dir);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not delete old class dump next to {}: {}", location, e.toString());
+            }
+        }, "OptiFineDevTweaker class dump cleanup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static boolean isEnabled(String className) {
+        return mode != Mode.OFF && matches(className);
+    }
+
+    public static void dump(Path location, String className, byte[] code) {
+        dump(location, className, () -> code);
+    }
+
+    /**
+     * @param code only called if the class is going to be dumped or retained
+     */
+    public static void dump(Path location, String className, Supplier<byte[]> code) {
+        if (location == null || !isEnabled(className)) {
+            return;
+        }
+        Mode mode = ClassDump.mode;
+        if (mode == Mode.ALWAYS) {
+            ClassDumpWriter.get().submit(location, className, code.get());
+        } else if (mode == Mode.RETAIN) {
+            retained.put(className, new Retained(location, code.get()));
+        }
+    }
+
+    private static boolean matches(String className) {
+        String name = className.replace('/', '.');
+        for (String prefix : exclude) {
+            if (name.startsWith(prefix)) {
+                return false;
+            }
+        }
+        String[] include = ClassDump.include;
+        if (include.length == 0) {
+            return true;
+        }
+        for (String prefix : include) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] patterns(String property) {
+        if (property == null || property.trim().isEmpty()) {
+            return new String[0];
+        }
+        return property.trim().replace('/', '.').split("\\s*,\\s*");
+    }
+
+    // management
+
+    @Override public String getMode() {
+        return mode.name().toLowerCase();
+    }
+
+    @Override public String getInclude() {
+        return String.join(",", include);
+    }
+
+    @Override public void setInclude(String include) {
+        ClassDump.include = patterns(include);
+    }
+
+    @Override public String getExclude() {
+        return String.join(",", exclude);
+    }
+
+    @Override public void setExclude(String exclude) {
+        ClassDump.exclude = patterns(exclude);
+    }
+
+    @Override public int getRetainedClasses() {
+        return retained.size();
+    }
+
+    @Override public long getRetainedBytes() {
+        long total = 0;
+        for (Retained r : retained.values()) {
+            total += r.compressed.length;
+        }
+        return total;
+    }
+
+    @Override public int getDroppedClasses() {
+        return ClassDumpWriter.get().dropped();
+    }
+
+    @Override public int dumpRetained() throws InterruptedException {
+        ClassDumpWriter writer = ClassDumpWriter.get();
+        int count = 0;
+        for (Map.Entry<String, Retained> e : retained.entrySet()) {
+            if (!matches(e.getKey())) {
+                continue;
+            }
+            try {
+                writer.put(e.getValue().location, e.getKey(), e.getValue().code());
+                count++;
+            } catch (DataFormatException ex) {
+                LOGGER.warn("Could not decompress retained class {}: {}", e.getKey(), ex.toString());
+            }
+        }
+        LOGGER.info("Dumping {} retained classes", count);
+        return count;
+    }
+
+    @Override public void startDumping() {
+        mode = Mode.ALWAYS;
+    }
+
+    @Override public void stopDumping() {
+        mode = INITIAL_MODE == Mode.RETAIN ? Mode.RETAIN : Mode.OFF;
+    }
+
+    private static final class Retained {
+        final Path location;
+        final byte[] compressed;
+        final int size;
+
+        Retained(Path location, byte[] code) {
+            this.location = location;
+            this.size = code.length;
+            Deflater def = deflater.get();
+            def.reset();
+            def.setInput(code);
+            def.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(code.length / 2);
+            byte[] buf = new byte[4096];
+            while (!def.finished()) {
+                out.write(buf, 0, def.deflate(buf));
+            }
+            this.compressed = out.toByteArray();
+        }
+
+        byte[] code() throws DataFormatException {
+            Inflater inf = new Inflater();
+            try {
+                inf.setInput(compressed);
+                byte[] code = new byte[size];
+                int total = 0;
+                while (total < size && !inf.finished()) {
+                    int n = inf.inflate(code, total, size - total);
+                    if (n == 0 && inf.needsInput()) {
+                        throw new DataFormatException("Truncated data");
+                    }
+                    total += n;
+                }
+                return code;
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
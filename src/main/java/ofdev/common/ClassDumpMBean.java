@@ -0,0 +1,38 @@
+package ofdev.common;
+
+// management interface of ClassDump, registered as ofdev:type=ClassDump
+public interface ClassDumpMBean {
+
+    String getMode();
+
+    String getInclude();
+
+    void setInclude(String include);
+
+    String getExclude();
+
+    void setExclude(String exclude);
+
+    int getRetainedClasses();
+
+    long getRetainedBytes();
+
+    int getDroppedClasses();
+
+    /**
+     * Dumps every class retained so far.
+     *
+     * @return number of dumped classes
+     */
+    int dumpRetained() throws InterruptedException;
+
+    /**
+     * Dumps every class transformed from now on.
+     */
+    void startDumping();
+
+    /**
+     * Stops dumping new classes, they are still retained if the mode was retain before.
+     */
+    void stopDumping();
+}
@@ -0,0 +1,355 @@
+package ofdev.common;
+
+import static ofdev.common.Utils.LOGGER;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes dumped classes on a background thread, so that dumping never slows down class loading.
+ * <p>
+ * The queue is bounded. When it's full the class is not dumped and only counted, the dump is just for attaching to an IDE.
+ * Whatever is queued at JVM shutdown is still written.
+ * <p>
+ * The dump is incremental. A manifest with a hash of each dumped class is kept in the dump directory, and a class is only written
+ * when it changed since the last run. At shutdown classes that weren't dumped this time are deleted and the manifest is saved.
+ * The manifest is deleted while the game runs, so a run that didn't shut down cleanly makes the next one start from scratch.
+ * <p>
+ * With {@code -Dofdev.dumpFormat=jar} classes are dumped into one jar in the dump directory instead of loose files, see
+ * {@link DumpJar}.
+ */
+public class ClassDumpWriter {
+
+    private static final int QUEUE_SIZE = Integer.getInteger("ofdev.dumpQueueSize", 4096);
+    private static final int BATCH_SIZE = 256;
+
+    private static final boolean DUMP_JAR = "jar".equals(System.getProperty("ofdev.dumpFormat"));
+    private static final String JAR_NAME = "classes.jar";
+
+    // different manifest for each format, so that switching the format starts from scratch
+    private static final String MANIFEST = DUMP_JAR ? "ofdev-manifest-jar.bin" : "ofdev-manifest.bin";
+    private static final int MANIFEST_MAGIC = 0x4F46444D; // OFDM
+    private static final int MANIFEST_VERSION = 1;
+
+    private static ClassDumpWriter instance;
+
+    private final BlockingQueue<Dump> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicInteger dropped = new AtomicInteger();
+    // guarded by this, used by the writer thread and the shutdown hook
+    private final Set<Path> createdDirs = new HashSet<>();
+    private final Map<Path, DumpDir> dumpDirs = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean shutdown;
+
+    private ClassDumpWriter() {
+        thread = new Thread(this::run, "OptiFineDevTweaker class dump writer");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "OptiFineDevTweaker class dump flush"));
+    }
+
+    public static synchronized ClassDumpWriter get() {
+        if (instance == null) {
+            instance = new ClassDumpWriter();
+        }
+        return instance;
+    }
+
+    public void submit(Path location, String className, byte[] code) {
+        if (shutdown || !queue.offer(new Dump(location, className, code))) {
+            if (dropped.getAndIncrement() == 0) {
+                LOGGER.warn("Class dump queue is full, some classes won't be dumped (-Dofdev.dumpQueueSize={})", QUEUE_SIZE);
+            }
+        }
+    }
+
+    // waits for space in the queue, for dumps requested through ClassDump
+    void put(Path location, String className, byte[] code) throws InterruptedException {
+        if (!shutdown) {
+            queue.put(new Dump(location, className, code));
+        }
+    }
+
+    public int dropped() {
+        return dropped.get();
+    }
+
+    private void run() {
+        List<Dump> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (!shutdown) {
+                Dump first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private void flush() {
+        shutdown = true;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ignored) {
+        }
+        List<Dump> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        write(rest);
+        synchronized (this) {
+            for (DumpDir dir : dumpDirs.values()) {
+                dir.pruneAndSave();
+            }
+        }
+        if (dropped.get() > 0) {
+            LOGGER.warn("{} classes were not dumped because the dump queue was full", dropped.get());
+        }
+    }
+
+    private synchronized void write(List<Dump> batch) {
+        List<Dump> changed = new ArrayList<>(batch.size());
+        for (Dump dump : batch) {
+            if (dumpDir(dump.location).update(dump.className, TransformCache.quickHash(dump.code))) {
+                changed.add(dump);
+            }
+        }
+        batch = changed;
+        if (DUMP_JAR) {
+            for (Dump dump : batch) {
+                DumpDir dir = dumpDir(dump.location);
+                if (dir.jar == null) {
+                    continue;
+                }
+                try {
+                    dir.jar.put(entryName(dump.className), dump.code);
+                } catch (IOException e) {
+                    LOGGER.warn("Could not dump class {} to {}: {}", dump.className, dir.jar.file(), e.toString());
+                    dir.failed = true;
+                }
+            }
+            return;
+        }
+        // create directories for the whole batch first, most classes share a few packages
+        for (Dump dump : batch) {
+            try {
+                mkdirs(dump.file().getParent());
+            } catch (IOException e) {
+                LOGGER.warn("Could not create class dump directory for {}: {}", dump.className, e.toString());
+            }
+        }
+        for (Dump dump : batch) {
+            try {
+                Files.write(dump.file(), dump.code);
+            } catch (IOException e) {
+                LOGGER.warn("Could not dump class {}: {}", dump.className, e.toString());
+                dumpDir(dump.location).failed = true;
+            }
+        }
+    }
+
+    private DumpDir dumpDir(Path location) {
+        DumpDir dir = dumpDirs.get(location);
+        if (dir == null) {
+            dir = new DumpDir(location);
+            dumpDirs.put(location, dir);
+        }
+        return dir;
+    }
+
+    private void mkdirs(Path dir) throws IOException {
+        if (createdDirs.contains(dir)) {
+            return;
+        }
+        if (!Files.isDirectory(dir)) {
+            mkdirs(dir.getParent());
+            try {
+                Files.createDirectory(dir);
+            } catch (FileAlreadyExistsException ignored) {
+            }
+        }
+        createdDirs.add(dir);
+    }
+
+    private static String entryName(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+
+    private static Path classFile(Path location, String className) {
+        return location.resolve(entryName(className));
+    }
+
+    private static final class DumpDir {
+        final Path location;
+        // from the last run
+        final Map<String, Long> previous = new HashMap<>();
+        final Map<String, Long> current = new HashMap<>();
+        // only for jar format, null if it couldn't be opened
+        DumpJar jar;
+        // something wasn't written, so the manifest can't be trusted
+        boolean failed;
+
+        DumpDir(Path location) {
+            this.location = location;
+            Path manifest = location.resolve(MANIFEST);
+            try {
+                if (Files.exists(manifest)) {
+                    readManifest(manifest);
+                    Files.delete(manifest);
+                } else if (Files.exists(location)) {
+                    // no manifest means we don't know what's in there
+                    LOGGER.info("Class dump at {} has no manifest, deleting it", location);
+                    Utils.rm(location);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Could not read class dump manifest, deleting class dump at {}: {}", location, e.toString());
+                previous.clear();
+                try {
+                    Utils.rm(location);
+                } catch (IOException ex) {
+                    LOGGER.warn("Could not delete class dump at {}: {}", location, ex.toString());
+                }
+            }
+            if (DUMP_JAR) {
+                jar = openJar(location.resolve(JAR_NAME));
+            }
+        }
+
+        private DumpJar openJar(Path file) {
+            try {
+                if (!Files.exists(file)) {
+                    previous.clear();
+                }
+                return DumpJar.open(file);
+            } catch (IOException e) {
+                LOGGER.warn("Could not open class dump jar {}, starting with new one: {}", file, e.toString());
+                previous.clear();
+                try {
+                    Files.deleteIfExists(file);
+                    return DumpJar.open(file);
+                } catch (IOException ex) {
+                    LOGGER.warn("Could not create class dump jar {}: {}", file, ex.toString());
+                    failed = true;
+                    return null;
+                }
+            }
+        }
+
+        // whether the class needs to be written
+        boolean update(String className, long hash) {
+            Long old = current.put(className, hash);
+            if (old == null) {
+                old = previous.get(className);
+            }
+            return old == null || old != hash;
+        }
+
+        void pruneAndSave() {
+            int pruned = 0;
+            for (String className : previous.keySet()) {
+                if (current.containsKey(className)) {
+                    continue;
+                }
+                if (jar != null) {
+                    jar.remove(entryName(className));
+                    pruned++;
+                    continue;
+                }
+                Path file = classFile(location, className);
+                try {
+                    Files.deleteIfExists(file);
+                    pruned++;
+                    // remove now empty packages
+                    for (Path dir = file.getParent(); !dir.equals(location); dir = dir.getParent()) {
+                        Files.delete(dir);
+                    }
+                } catch (IOException ignored) {
+                    // DirectoryNotEmptyException most of the time
+                }
+            }
+            if (pruned > 0) {
+                LOGGER.info("Removed {} stale classes from class dump at {}", pruned, location);
+            }
+            if (jar != null) {
+                try {
+                    jar.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not write class dump jar {}: {}", jar.file(), e.toString());
+                    failed = true;
+                }
+            }
+            if (failed) {
+                // next run starts from scratch
+                return;
+            }
+            try {
+                writeManifest();
+            } catch (IOException e) {
+                LOGGER.warn("Could not write class dump manifest at {}: {}", location, e.toString());
+            }
+        }
+
+        private void readManifest(Path manifest) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+                if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION) {
+                    throw new IOException("Unsupported manifest version");
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    previous.put(in.readUTF(), in.readLong());
+                }
+            }
+        }
+
+        private void writeManifest() throws IOException {
+            Files.createDirectories(location);
+            Path tmp = location.resolve(MANIFEST + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeInt(MANIFEST_VERSION);
+                out.writeInt(current.size());
+                for (Map.Entry<String, Long> e : current.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue());
+                }
+            }
+            Files.move(tmp, location.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static final class Dump {
+        final Path location;
+        final String className;
+        final byte[] code;
+
+        Dump(Path location, String className, byte[] code) {
+            this.location = location;
+            this.className = className;
+            this.code = code;
+        }
+
+        Path file() {
+            return classFile(location, className);
+        }
+    }
+}
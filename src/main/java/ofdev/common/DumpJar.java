@@ -0,0 +1,205 @@
+package ofdev.common;
+
+import static ofdev.common.Utils.LOGGER;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipException;
+
+/**
+ * Jar that class dumps are appended to, for the jar dump format of ClassDumpWriter.
+ * <p>
+ * Entries are stored uncompressed and only ever appended. Opening an existing jar drops its central directory, changed classes are
+ * appended after the last entry and the central directory is written again on {@link #close()}, so replaced entries are just left
+ * unreferenced in the file. When more than half of the file is unreferenced, it's rewritten without them.
+ * <p>
+ * Until it's closed the jar has no central directory, so it's only valid after a clean shutdown. Not thread safe.
+ */
+final class DumpJar {
+
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int LOC_HEADER_SIZE = 30;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int EOCD_SIZE = 22;
+
+    private static final int VERSION = 10; // 1.0, stored entries only
+    private static final int FLAG_UTF8 = 0x800;
+    // 1980-01-01 00:00, the same bytes for the same classes
+    private static final int DOS_TIME = 0;
+    private static final int DOS_DATE = (1 << 5) | 1;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final CRC32 crc = new CRC32();
+    private long position;
+    private long liveBytes;
+
+    private DumpJar(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens existing dump jar, or creates new one if it doesn't exist.
+     */
+    static DumpJar open(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            Files.createDirectories(file.getParent());
+            return new DumpJar(file, FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+        JarIndex index = JarIndex.openDirectory(file);
+        DumpJar jar = new DumpJar(file, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        for (int i = 0; i < index.entryCount(); i++) {
+            if (index.method(i) != 0) {
+                jar.channel.close();
+                throw new ZipException("Not a class dump jar: " + file);
+            }
+            byte[] name = index.name(i).getBytes(StandardCharsets.UTF_8);
+            Entry entry = new Entry(name, index.headerOffset(i), index.crc(i), index.size(i));
+            jar.entries.put(index.name(i), entry);
+            jar.liveBytes += entry.length();
+        }
+        jar.position = index.centralDirectoryOffset();
+        jar.channel.truncate(jar.position);
+        return jar;
+    }
+
+    Path file() {
+        return file;
+    }
+
+    void put(String name, byte[] data) throws IOException {
+        crc.reset();
+        crc.update(data, 0, data.length);
+        Entry entry = new Entry(name.getBytes(StandardCharsets.UTF_8), position, (int) crc.getValue(), data.length);
+
+        ByteBuffer header = ByteBuffer.allocate(LOC_HEADER_SIZE + entry.name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOC_SIGNATURE).putShort((short) VERSION).putShort((short) FLAG_UTF8).putShort((short) 0)
+                .putShort((short) DOS_TIME).putShort((short) DOS_DATE)
+                .putInt(entry.crc).putInt(entry.size).putInt(entry.size)
+                .putShort((short) entry.name.length).putShort((short) 0)
+                .put(entry.name);
+        header.flip();
+        writeFully(new ByteBuffer[]{header, ByteBuffer.wrap(data)}, position);
+        position += entry.length();
+
+        Entry old = entries.put(name, entry);
+        if (old != null) {
+            liveBytes -= old.length();
+        }
+        liveBytes += entry.length();
+    }
+
+    void remove(String name) {
+        Entry old = entries.remove(name);
+        if (old != null) {
+            liveBytes -= old.length();
+        }
+    }
+
+    /**
+     * Writes the central directory and closes the jar.
+     */
+    void close() throws IOException {
+        try {
+            if (position > liveBytes * 2 && position > 1024 * 1024) {
+                compact();
+            } else {
+                writeCentralDirectory(channel, position);
+            }
+        } finally {
+            if (channel.isOpen()) {
+                channel.close();
+            }
+        }
+    }
+
+    // copies the entries that are still used to a new file
+    private void compact() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        long start = position;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long outPosition = 0;
+            for (Entry entry : entries.values()) {
+                long length = entry.length();
+                for (long copied = 0; copied < length; ) {
+                    copied += channel.transferTo(entry.offset + copied, length - copied, out);
+                }
+                entry.offset = outPosition;
+                outPosition += length;
+            }
+            writeCentralDirectory(out, outPosition);
+        }
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        LOGGER.info("Compacted class dump jar {} from {} to {} bytes", file, start, liveBytes);
+    }
+
+    private void writeCentralDirectory(FileChannel out, long cenOffset) throws IOException {
+        if (entries.size() >= 0xFFFF || cenOffset >= 0xFFFFFFFFL) {
+            throw new ZipException("Class dump jar too large, Zip64 is not supported: " + file);
+        }
+        int cenSize = 0;
+        for (Entry entry : entries.values()) {
+            cenSize += CEN_HEADER_SIZE + entry.name.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(cenSize + EOCD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        for (Entry entry : entries.values()) {
+            buf.putInt(CEN_SIGNATURE).putShort((short) VERSION).putShort((short) VERSION).putShort((short) FLAG_UTF8).putShort((short) 0)
+                    .putShort((short) DOS_TIME).putShort((short) DOS_DATE)
+                    .putInt(entry.crc).putInt(entry.size).putInt(entry.size)
+                    .putShort((short) entry.name.length).putShort((short) 0).putShort((short) 0)
+                    .putShort((short) 0).putShort((short) 0).putInt(0)
+                    .putInt((int) entry.offset)
+                    .put(entry.name);
+        }
+        buf.putInt(EOCD_SIGNATURE).putShort((short) 0).putShort((short) 0)
+                .putShort((short) entries.size()).putShort((short) entries.size())
+                .putInt(cenSize).putInt((int) cenOffset).putShort((short) 0);
+        buf.flip();
+        for (long pos = cenOffset; buf.hasRemaining(); ) {
+            pos += out.write(buf, pos);
+        }
+        out.truncate(cenOffset + cenSize + EOCD_SIZE);
+    }
+
+    private void writeFully(ByteBuffer[] buffers, long pos) throws IOException {
+        // positional gathering writes don't exist, the position is only moved by this class
+        channel.position(pos);
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    private static final class Entry {
+        final byte[] name;
+        long offset;
+        final int crc;
+        final int size;
+
+        Entry(byte[] name, long offset, int crc, int size) {
+            this.name = name;
+            this.offset = offset;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        // local header and data
+        long length() {
+            return LOC_HEADER_SIZE + name.length + (size & 0xFFFFFFFFL);
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package ofdev.common;
+
+import static ofdev.common.Utils.LOGGER;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Read only view of a jar file, for the Minecraft jar that is read a lot but never changes.
+ * <p>
+ * The whole file is memory-mapped and the central directory is parsed once into a hash index of entry names. Stored entries are
+ * served as slices of the mapped file without copying, deflated entries are inflated directly into an array of their exact size,
+ * with the compressed bytes staged in a per-thread buffer. Thread safe.
+ */
+public class JarIndex {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CEN_SIGNATURE = 0x02014b50;
+    private static final int LOC_SIGNATURE = 0x04034b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_HEADER_SIZE = 46;
+    private static final int LOC_HEADER_SIZE = 30;
+
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private static final ThreadLocal<Inflater> inflater = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<byte[]> compressedBuffer = ThreadLocal.withInitial(() -> new byte[64 * 1024]);
+
+    private final Path path;
+    private final ByteBuffer data;
+
+    private final String[] names;
+    private final int[] methods;
+    private final int[] crcs;
+    private final int[] compressedSizes;
+    private final int[] sizes;
+    private final int[] headerOffsets;
+    // open addressing, a slot holds entry index + 1, 0 is empty
+    private final int[] slots;
+    // only known for openDirectory
+    private long centralDirectoryOffset = -1;
+
+    private JarIndex(Path path, ByteBuffer data, int entries) {
+        this.path = path;
+        this.data = data;
+        this.names = new String[entries];
+        this.methods = new int[entries];
+        this.crcs = new int[entries];
+        this.compressedSizes = new int[entries];
+        this.sizes = new int[entries];
+        this.headerOffsets = new int[entries];
+        this.slots = new int[Integer.highestOneBit(Math.max(entries, 4) * 2 - 1) << 1];
+    }
+
+    public static JarIndex open(Path jar) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new ZipException("Jar too large to map: " + jar);
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        int eocd = findEndOfCentralDirectory(data);
+        if (eocd < 0) {
+            throw new ZipException("Not a zip file: " + jar);
+        }
+        JarIndex index = new JarIndex(jar, data, entryCount(data, eocd, jar));
+        index.readCentralDirectory(data, (int) centralDirectoryOffset(data, eocd, jar));
+        LOGGER.debug("Indexed {} entries of {}", index.names.length, jar);
+        return index;
+    }
+
+    /**
+     * Reads only the central directory into memory, without keeping the file open or mapped. Entries can't be read from the
+     * returned index, only their metadata, for ClassDumpWriter that appends to the jar it reads.
+     */
+    static JarIndex openDirectory(Path jar) throws IOException {
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer tail = readFully(channel, Math.max(0, size - EOCD_SIZE - 0xFFFF), (int) Math.min(size, EOCD_SIZE + 0xFFFF));
+            int eocd = findEndOfCentralDirectory(tail);
+            if (eocd < 0) {
+                throw new ZipException("Not a zip file: " + jar);
+            }
+            long cenOffset = centralDirectoryOffset(tail, eocd, jar);
+            JarIndex index = new JarIndex(jar, null, entryCount(tail, eocd, jar));
+            index.centralDirectoryOffset = cenOffset;
+            index.readCentralDirectory(readFully(channel, cenOffset, tail.getInt(eocd + 12)), 0);
+            return index;
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new ZipException("Unexpected end of file");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static int entryCount(ByteBuffer buf, int eocd, Path jar) throws ZipException {
+        int entries = buf.getShort(eocd + 10) & 0xFFFF;
+        if (entries == 0xFFFF) {
+            throw new ZipException("Zip64 is not supported: " + jar);
+        }
+        return entries;
+    }
+
+    private static long centralDirectoryOffset(ByteBuffer buf, int eocd, Path jar) throws ZipException {
+        long cenOffset = buf.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if (cenOffset == 0xFFFFFFFFL) {
+            throw new ZipException("Zip64 is not supported: " + jar);
+        }
+        return cenOffset;
+    }
+
+    private void readCentralDirectory(ByteBuffer cen, int pos) throws ZipException {
+        byte[] nameBuf = new byte[256];
+        for (int i = 0; i < names.length; i++) {
+            if (cen.getInt(pos) != CEN_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry " + i + " in " + path);
+            }
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            if (nameLength > nameBuf.length) {
+                nameBuf = new byte[nameLength];
+            }
+            ByteBuffer name = cen.duplicate();
+            name.position(pos + CEN_HEADER_SIZE);
+            name.get(nameBuf, 0, nameLength);
+
+            names[i] = new String(nameBuf, 0, nameLength, StandardCharsets.UTF_8);
+            methods[i] = cen.getShort(pos + 10) & 0xFFFF;
+            crcs[i] = cen.getInt(pos + 16);
+            compressedSizes[i] = cen.getInt(pos + 20);
+            sizes[i] = cen.getInt(pos + 24);
+            headerOffsets[i] = cen.getInt(pos + 42);
+            addToIndex(i);
+            pos += CEN_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer data) {
+        // the comment at the end is at most 64k
+        int min = Math.max(0, data.limit() - EOCD_SIZE - 0xFFFF);
+        for (int pos = data.limit() - EOCD_SIZE; pos >= min; pos--) {
+            if (data.getInt(pos) == EOCD_SIGNATURE) {
+                return pos;
+            }
+        }
+        return -1;
+    }
+
+    private void addToIndex(int entry) {
+        int mask = slots.length - 1;
+        int i = hash(names[entry]) & mask;
+        while (slots[i] != 0) {
+            // keep the first one of duplicate entries
+            if (names[slots[i] - 1].equals(names[entry])) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = entry + 1;
+    }
+
+    private int find(String name) {
+        int mask = slots.length - 1;
+        for (int i = hash(name) & mask, slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            if (names[slot - 1].equals(name)) {
+                return slot - 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int hash(String name) {
+        int h = name.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public boolean contains(String name) {
+        return find(name) >= 0;
+    }
+
+    // entry metadata, for ClassDumpWriter
+
+    int entryCount() {
+        return names.length;
+    }
+
+    String name(int entry) {
+        return names[entry];
+    }
+
+    int method(int entry) {
+        return methods[entry];
+    }
+
+    int crc(int entry) {
+        return crcs[entry];
+    }
+
+    int compressedSize(int entry) {
+        return compressedSizes[entry];
+    }
+
+    int size(int entry) {
+        return sizes[entry];
+    }
+
+    int headerOffset(int entry) {
+        return headerOffsets[entry];
+    }
+
+    long centralDirectoryOffset() {
+        return centralDirectoryOffset;
+    }
+
+    /**
+     * @return content of the entry, or null if there is no such entry
+     */
+    public byte[] read(String name) throws IOException {
+        int entry = find(name);
+        if (entry < 0) {
+            return null;
+        }
+        ByteBuffer raw = rawData(entry);
+        byte[] out = new byte[sizes[entry]];
+        if (methods[entry] == STORED) {
+            raw.get(out);
+            return out;
+        }
+        return inflate(entry, raw, out);
+    }
+
+    /**
+     * @return stream of the entry content, or null if there is no such entry
+     */
+    public InputStream openStream(String name) throws IOException {
+        int entry = find(name);
+        if (entry < 0) {
+            return null;
+        }
+        if (methods[entry] == STORED) {
+            return new ByteBufferInputStream(rawData(entry));
+        }
+        return new ByteArrayInputStream(inflate(entry, rawData(entry), new byte[sizes[entry]]));
+    }
+
+    // compressed data of the entry, a slice of the mapped file
+    private ByteBuffer rawData(int entry) throws ZipException {
+        if (data == null) {
+            throw new IllegalStateException("Only the central directory of " + path + " was read");
+        }
+        int header = headerOffsets[entry];
+        if (data.getInt(header) != LOC_SIGNATURE) {
+            throw new ZipException("Invalid local header for " + names[entry] + " in " + path);
+        }
+        int start = header + LOC_HEADER_SIZE + (data.getShort(header + 26) & 0xFFFF) + (data.getShort(header + 28) & 0xFFFF);
+        ByteBuffer slice = data.duplicate();
+        slice.limit(start + compressedSizes[entry]).position(start);
+        return slice.slice();
+    }
+
+    private byte[] inflate(int entry, ByteBuffer raw, byte[] out) throws ZipException {
+        if (methods[entry] != DEFLATED) {
+            throw new ZipException("Unsupported compression method " + methods[entry] + " for " + names[entry] + " in " + path);
+        }
+        byte[] in = compressedBuffer.get();
+        if (in.length < raw.remaining()) {
+            in = new byte[Integer.highestOneBit(raw.remaining()) << 1];
+            compressedBuffer.set(in);
+        }
+        int length = raw.remaining();
+        raw.get(in, 0, length);
+        Inflater inf = inflater.get();
+        inf.reset();
+        inf.setInput(in, 0, length);
+        try {
+            int total = 0;
+            while (total < out.length && !inf.finished()) {
+                int n = inf.inflate(out, total, out.length - total);
+                if (n == 0 && (inf.needsInput() || inf.needsDictionary())) {
+                    break;
+                }
+                total += n;
+            }
+            if (total != out.length) {
+                throw new ZipException("Truncated entry " + names[entry] + " in " + path);
+            }
+        } catch (DataFormatException e) {
+            ZipException ex = new ZipException("Corrupted entry " + names[entry] + " in " + path);
+            ex.initCause(e);
+            throw ex;
+        }
+        return out;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xFF : -1;
+        }
+
+        @Override public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buf.remaining()));
+            buf.position(buf.position() + skipped);
+            return skipped;
+        }
+
+        @Override public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ofdev.common;
+
+import static ofdev.common.Utils.LOGGER;
+
+import java.nio.file.Path;
+
+/**
+ * Java Flight Recorder events of OptiFineDevTweaker, in category "OptiFineDevTweaker".
+ * <p>
+ * jdk.jfr only exists since 8u262, so this checks for it once and does nothing without it. A begin method returns null when
+ * the event isn't recorded, and the matching end method ignores null. Disabled with {@code -Dofdev.skipJfr=true}.
+ */
+public class Jfr {
+
+    public static final boolean AVAILABLE = isAvailable();
+
+    private static boolean isAvailable() {
+        if (Boolean.getBoolean("ofdev.skipJfr")) {
+            return false;
+        }
+        try {
+            Class.forName("jdk.jfr.Event", false, Jfr.class.getClassLoader());
+            Class.forName("ofdev.common.JfrEvents");
+            return true;
+        } catch (ClassNotFoundException | LinkageError | RuntimeException e) {
+            LOGGER.debug("JFR events not available: {}", e.toString());
+            return false;
+        }
+    }
+
+    public static Object beginMappingLoad() {
+        return AVAILABLE ? JfrEvents.beginMappingLoad() : null;
+    }
+
+    public static void endMappingLoad(Object event, String phase, String source, long entries) {
+        if (event != null) {
+            JfrEvents.endMappingLoad(event, phase, source, entries);
+        }
+    }
+
+    public static Object beginJarLookup() {
+        return AVAILABLE ? JfrEvents.beginJarLookup() : null;
+    }
+
+    public static void endJarLookup(Object event, Path jar) {
+        if (event != null) {
+            JfrEvents.endJarLookup(event, jar);
+        }
+    }
+
+    public static Object beginOptiFineInit() {
+        return AVAILABLE ? JfrEvents.beginOptiFineInit() : null;
+    }
+
+    public static void endOptiFineInit(Object event, String launcher) {
+        if (event != null) {
+            JfrEvents.endOptiFineInit(event, launcher);
+        }
+    }
+
+    // stage and class events are recorded through TransformMetrics
+
+    static Object beginStage() {
+        return AVAILABLE ? JfrEvents.beginStage() : null;
+    }
+
+    static void endStage(Object event, String stage, String className) {
+        if (event != null) {
+            JfrEvents.endStage(event, stage, className);
+        }
+    }
+
+    static Object beginClass() {
+        return AVAILABLE ? JfrEvents.beginClass() : null;
+    }
+
+    static void endClass(Object event, String className, String launcher, int inputSize, int outputSize, boolean modified) {
+        if (event != null) {
+            JfrEvents.endClass(event, className, launcher, inputSize, outputSize, modified);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ofdev.common;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.nio.file.Path;
+
+// only loaded through Jfr when jdk.jfr is available, events are only created while a recording wants them
+final class JfrEvents {
+
+    private static final EventType MAPPING_LOAD = EventType.getEventType(MappingLoad.class);
+    private static final EventType JAR_LOOKUP = EventType.getEventType(MinecraftJarLookup.class);
+    private static final EventType OPTIFINE_INIT = EventType.getEventType(OptiFineInit.class);
+    private static final EventType STAGE = EventType.getEventType(TransformStage.class);
+    private static final EventType CLASS = EventType.getEventType(ClassTransform.class);
+
+    private static Object begin(Event event) {
+        event.begin();
+        return event;
+    }
+
+    static Object beginMappingLoad() {
+        return MAPPING_LOAD.isEnabled() ? begin(new MappingLoad()) : null;
+    }
+
+    static void endMappingLoad(Object token, String phase, String source, long entries) {
+        MappingLoad event = (MappingLoad) token;
+        event.end();
+        event.phase = phase;
+        event.source = source;
+        event.entries = entries;
+        event.commit();
+    }
+
+    static Object beginJarLookup() {
+        return JAR_LOOKUP.isEnabled() ? begin(new MinecraftJarLookup()) : null;
+    }
+
+    static void endJarLookup(Object token, Path jar) {
+        MinecraftJarLookup event = (MinecraftJarLookup) token;
+        event.end();
+        event.path = String.valueOf(jar);
+        event.commit();
+    }
+
+    static Object beginOptiFineInit() {
+        return OPTIFINE_INIT.isEnabled() ? begin(new OptiFineInit()) : null;
+    }
+
+    static void endOptiFineInit(Object token, String launcher) {
+        OptiFineInit event = (OptiFineInit) token;
+        event.end();
+        event.launcher = launcher;
+        event.commit();
+    }
+
+    static Object beginStage() {
+        return STAGE.isEnabled() ? begin(new TransformStage()) : null;
+    }
+
+    static void endStage(Object token, String stage, String className) {
+        TransformStage event = (TransformStage) token;
+        event.end();
+        event.stage = stage;
+        event.className = className;
+        event.commit();
+    }
+
+    static Object beginClass() {
+        return CLASS.isEnabled() ? begin(new ClassTransform()) : null;
+    }
+
+    static void endClass(Object token, String className, String launcher, int inputSize, int outputSize, boolean modified) {
+        ClassTransform event = (ClassTransform) token;
+        event.end();
+        event.className = className;
+        event.launcher = launcher;
+        event.inputSize = inputSize;
+        event.outputSize = outputSize;
+        event.optifineModified = modified;
+        event.commit();
+    }
+
+    @Name("ofdev.MappingLoad") @Label("Mapping Load") @Category("OptiFineDevTweaker")
+    static class MappingLoad extends Event {
+        @Label("Phase") String phase;
+        @Label("Source") String source;
+        @Label("Entries") long entries;
+    }
+
+    @Name("ofdev.MinecraftJarLookup") @Label("Minecraft Jar Lookup") @Category("OptiFineDevTweaker")
+    static class MinecraftJarLookup extends Event {
+        @Label("Path") String path;
+    }
+
+    @Name("ofdev.OptiFineInit") @Label("OptiFine Transformer Initialization") @Category("OptiFineDevTweaker")
+    static class OptiFineInit extends Event {
+        @Label("Launcher") String launcher;
+    }
+
+    @Name("ofdev.TransformStage") @Label("Transform Stage") @Category("OptiFineDevTweaker")
+    static class TransformStage extends Event {
+        @Label("Stage") String stage;
+        @Label("Class") String className;
+    }
+
+    @Name("ofdev.ClassTransform") @Label("Class Transform") @Category("OptiFineDevTweaker")
+    @Description("Whole transformation of one class, sizes are -1 when the class wasn't serialized")
+    static class ClassTransform extends Event {
+        @Label("Class") String className;
+        @Label("Launcher") String launcher;
+        @Label("Input Size") @DataAmount int inputSize;
+        @Label("Output Size") @DataAmount int outputSize;
+        @Label("Modified by OptiFine") boolean optifineModified;
+    }
+}
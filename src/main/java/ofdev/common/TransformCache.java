@@ -0,0 +1,276 @@
+package ofdev.common;
+
+import static ofdev.common.Utils.LOGGER;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent content-addressed cache of transformed classes.
+ * <p>
+ * Each cache is a directory named after the fingerprint of everything the transformation depends on (OptiFine jar, Minecraft jar,
+ * mappings, this jar), and each entry is a file named after the hash of the class name and the input bytes. Entries are written to a
+ * temporary file and atomically moved into place, so multiple game instances can share one cache directory: a reader either sees
+ * a complete entry or no entry at all, and two writers racing for the same key always write the same content.
+ */
+public class TransformCache {
+
+    // bump whenever the format or the transformation output changes in a way the fingerprint can't see
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAGIC = 0x4F464443; // OFDC
+    private static final int HEADER_SIZE = 12;
+
+    public static final boolean ENABLED = !Boolean.getBoolean("ofdev.skipTransformCache");
+
+    private final String name;
+    private final Path dir;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writeFailures = new AtomicLong();
+
+    private TransformCache(String name, Path dir) {
+        this.name = name;
+        this.dir = dir;
+    }
+
+    /**
+     * Opens the cache for given inputs. Paths are fingerprinted by their location, size and modification time, anything else
+     * by its string value.
+     *
+     * @return the cache, or null if the cache is disabled or can't be used
+     */
+    public static TransformCache open(String name, Collection<?> inputs) {
+        if (!ENABLED) {
+            LOGGER.info("Transform cache disabled by ofdev.skipTransformCache");
+            return null;
+        }
+        try {
+            String ownJar = ownJar();
+            if (ownJar == null) {
+                return null;
+            }
+            List<Object> allInputs = new ArrayList<>(inputs);
+            allInputs.add(ownJar);
+            String fingerprint = fingerprint(name, allInputs);
+            Path dir = Utils.cacheDir().resolve("classes").resolve(name + "-" + fingerprint);
+            Files.createDirectories(dir);
+            TransformCache cache = new TransformCache(name, dir);
+            LOGGER.info("Using {} transform cache at {}", name, dir);
+            Runtime.getRuntime().addShutdownHook(new Thread(cache::logStats, "OptiFineDevTweaker transform cache stats"));
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not open " + name + " transform cache, continuing without it", e);
+            return null;
+        }
+    }
+
+    public static String fingerprint(String name, Collection<?> inputs) throws IOException {
+        MessageDigest digest = sha1();
+        update(digest, name + "\n" + FORMAT_VERSION + "\n");
+        for (Object input : inputs) {
+            if (input instanceof Path) {
+                Path path = ((Path) input).toAbsolutePath().normalize();
+                update(digest, path.toString());
+                if (Files.exists(path)) {
+                    update(digest, ":" + Files.size(path) + ":" + Files.getLastModifiedTime(path).toMillis());
+                }
+            } else {
+                update(digest, String.valueOf(input));
+            }
+            update(digest, "\n");
+        }
+        return hex(digest.digest());
+    }
+
+    public static String contentHash(InputStream in) throws IOException {
+        MessageDigest digest = sha1();
+        byte[] buf = new byte[8192];
+        int read;
+        while ((read = in.read(buf)) > 0) {
+            digest.update(buf, 0, read);
+        }
+        return hex(digest.digest());
+    }
+
+    // not cryptographic, just enough to tell versions of the same class apart
+    public static long quickHash(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        Adler32 adler = new Adler32();
+        adler.update(data, 0, data.length);
+        return crc.getValue() << 32 | adler.getValue();
+    }
+
+    /**
+     * @return version and content hash of the jar this class is loaded from, null if it isn't loaded from a jar file, like from
+     * a classes directory in a dev run, since there's nothing stable to tell builds apart by
+     */
+    private static String ownJar() throws IOException {
+        CodeSource source = TransformCache.class.getProtectionDomain().getCodeSource();
+        URL location = source == null ? null : source.getLocation();
+        if (location == null || !"file".equals(location.getProtocol())) {
+            LOGGER.info("OptiFineDevTweaker is not loaded from a jar file ({}), not using the transform cache", location);
+            return null;
+        }
+        Path jar;
+        try {
+            jar = Paths.get(location.toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("Could not find OptiFineDevTweaker jar location " + location, e);
+        }
+        if (!Files.isRegularFile(jar)) {
+            LOGGER.info("OptiFineDevTweaker is not loaded from a jar file ({}), not using the transform cache", jar);
+            return null;
+        }
+        Package pkg = TransformCache.class.getPackage();
+        String version = pkg == null ? null : pkg.getImplementationVersion();
+        try (InputStream in = Files.newInputStream(jar)) {
+            return "OptiFineDevTweaker " + version + " " + contentHash(in);
+        }
+    }
+
+    public Entry get(String className, byte[] input) {
+        Path file = entryPath(className, input);
+        byte[] data;
+        try {
+            data = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            misses.incrementAndGet();
+            return null;
+        } catch (IOException e) {
+            LOGGER.warn("Could not read transform cache entry {} for {}", file, className);
+            misses.incrementAndGet();
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (data.length < HEADER_SIZE || buf.getInt() != MAGIC) {
+            LOGGER.warn("Corrupted transform cache entry {} for {}", file, className);
+            misses.incrementAndGet();
+            return null;
+        }
+        int flags = buf.getInt();
+        int length = buf.getInt();
+        if (length != data.length - HEADER_SIZE) {
+            LOGGER.warn("Truncated transform cache entry {} for {}", file, className);
+            misses.incrementAndGet();
+            return null;
+        }
+        byte[] output = new byte[length];
+        buf.get(output);
+        hits.incrementAndGet();
+        return new Entry(flags, output);
+    }
+
+    public void put(String className, byte[] input, byte[] output, int flags) {
+        Path file = entryPath(className, input);
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + output.length);
+            buf.putInt(MAGIC).putInt(flags).putInt(output.length).put(output);
+            Files.write(tmp, buf.array());
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+        } catch (IOException e) {
+            // most likely another instance won the race and has the file open (Windows), the content is the same anyway
+            if (!Files.exists(file)) {
+                writeFailures.incrementAndGet();
+                LOGGER.warn("Could not write transform cache entry {} for {}: {}", file, className, e.toString());
+            }
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private Path entryPath(String className, byte[] input) {
+        MessageDigest digest = sha1();
+        update(digest, className);
+        digest.update((byte) 0);
+        digest.update(input);
+        String hash = hex(digest.digest());
+        return dir.resolve(hash.substring(0, 2)).resolve(hash.substring(2) + ".bin");
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public void logStats() {
+        long h = hits.get(), m = misses.get();
+        long total = h + m;
+        LOGGER.info("{} transform cache: {} hits, {} misses ({}% hit rate), {} failed writes",
+                name, h, m, total == 0 ? 0 : h * 100 / total, writeFailures.get());
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new Error(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public static final class Entry {
+        private final int flags;
+        private final byte[] data;
+
+        public Entry(int flags, byte[] data) {
+            this.flags = flags;
+            this.data = data;
+        }
+
+        public int flags() {
+            return flags;
+        }
+
+        public byte[] data() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package ofdev.common;
+
+import static ofdev.common.Utils.LOGGER;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Time, allocation and count of each transform stage, hit and miss counts of the mapping caches, and the slowest classes.
+ * <p>
+ * Registered as MBean {@code ofdev:type=TransformMetrics}. The summary is logged once no class was transformed for
+ * {@code -Dofdev.metricsIdleSeconds} (10 by default), which is usually the end of startup.
+ * Disabled with {@code -Dofdev.skipMetrics=true}. Allocation of each stage costs a call into the JVM at every start and end, so it's
+ * only tracked with {@code -Dofdev.metricsAllocation=true} or once switched on through the MBean.
+ * <p>
+ * A stage is started and ended on the same thread, the start is kept in a per-thread slot so timing doesn't allocate.
+ * Stages and classes are also recorded as JFR events, see {@link Jfr}.
+ */
+public class TransformMetrics implements TransformMetricsMBean {
+
+    public static final boolean ENABLED = !Boolean.getBoolean("ofdev.skipMetrics");
+    private static final int TOP_N = Integer.getInteger("ofdev.metricsTopN", 20);
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(Integer.getInteger("ofdev.metricsIdleSeconds", 10));
+
+    public enum Stage {
+        VANILLA_EXTRACTION, OPTIFINE_TRANSFORM, DEOBFUSCATION, ACCESS_RECONSTRUCTION, WRITE, DUMP
+    }
+
+    public enum Counter {
+        METHOD_MAP_HIT, METHOD_MAP_MISS, FIELD_MAP_HIT, FIELD_MAP_MISS, NEGATIVE_CACHE_HIT,
+        PATCHED_RESOURCE_CALLS, PATCHED_RESOURCE_NOT_FOUND, PATCHED_RESOURCE_NANOS, SRG_NAME_HIT, SRG_NAME_MISS
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+    private static final String[] STAGE_NAMES = new String[STAGES.length];
+
+    static {
+        for (Stage stage : STAGES) {
+            STAGE_NAMES[stage.ordinal()] = stage.name().toLowerCase();
+        }
+    }
+
+    // bytes allocated by the current thread, null when allocation isn't tracked
+    private static volatile LongSupplier allocationCounter = Boolean.getBoolean("ofdev.metricsAllocation") ? allocationCounter() : null;
+
+    private static final LongAdder[] stageCounts = adders(STAGES.length);
+    private static final LongAdder[] stageNanos = adders(STAGES.length);
+    private static final LongAdder[] stageAllocated = adders(STAGES.length);
+    private static final LongAdder[] counters = adders(COUNTERS.length);
+    private static final LongAdder classes = new LongAdder();
+    private static final LongAdder classNanos = new LongAdder();
+
+    private static final ThreadLocal<ThreadState> threadState = ThreadLocal.withInitial(ThreadState::new);
+
+    // min-heap, the fastest of the slowest on top
+    private static final PriorityQueue<SlowClass> slowest = new PriorityQueue<>(Comparator.comparingLong(c -> c.nanos));
+    private static volatile long slowestThreshold;
+
+    private static volatile long lastTransform;
+    private static volatile boolean summaryLogged;
+
+    static {
+        if (ENABLED) {
+            Utils.registerMBean(new TransformMetrics(), "ofdev:type=TransformMetrics");
+            Thread watcher = new Thread(TransformMetrics::logWhenIdle, "OptiFineDevTweaker metrics");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    private static LongSupplier allocationCounter() {
+        try {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+                return null;
+            }
+            com.sun.management.ThreadMXBean allocBean = (com.sun.management.ThreadMXBean) bean;
+            allocBean.setThreadAllocatedMemoryEnabled(true);
+            MethodHandle current;
+            try {
+                // Java 14+, doesn't look the thread up by id
+                current = MethodHandles.publicLookup().findVirtual(com.sun.management.ThreadMXBean.class, "getCurrentThreadAllocatedBytes",
+                        MethodType.methodType(long.class)).bindTo(allocBean);
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                return () -> allocBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+            return () -> {
+                try {
+                    return (long) current.invokeExact();
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            };
+        } catch (LinkageError | RuntimeException e) {
+            LOGGER.debug("Thread allocation tracking not available: {}", e.toString());
+        }
+        return null;
+    }
+
+    private static LongAdder[] adders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    // -1 when allocation isn't tracked
+    private static long allocatedBytes() {
+        LongSupplier counter = allocationCounter;
+        return counter == null ? -1 : counter.getAsLong();
+    }
+
+    public static void begin(Stage stage) {
+        if (!ENABLED && !Jfr.AVAILABLE) {
+            return;
+        }
+        ThreadState state = threadState.get();
+        int i = stage.ordinal();
+        state.stageEvents[i] = Jfr.beginStage();
+        if (ENABLED) {
+            state.startAllocated[i] = allocatedBytes();
+            state.startTimes[i] = System.nanoTime();
+        }
+    }
+
+    public static void end(Stage stage) {
+        if (!ENABLED && !Jfr.AVAILABLE) {
+            return;
+        }
+        long now = System.nanoTime();
+        ThreadState state = threadState.get();
+        int i = stage.ordinal();
+        Jfr.endStage(state.stageEvents[i], STAGE_NAMES[i], state.className);
+        state.stageEvents[i] = null;
+        long start = state.startTimes[i];
+        if (start == 0) {
+            return; // never started on this thread
+        }
+        state.startTimes[i] = 0;
+        stageNanos[i].add(now - start);
+        long startAllocated = state.startAllocated[i];
+        if (startAllocated >= 0) {
+            long allocated = allocatedBytes();
+            // tracking may have been switched off since the start
+            if (allocated >= 0) {
+                stageAllocated[i].add(allocated - startAllocated);
+            }
+        }
+        stageCounts[i].increment();
+    }
+
+    public static void beginClass(String className) {
+        if (!ENABLED && !Jfr.AVAILABLE) {
+            return;
+        }
+        ThreadState state = threadState.get();
+        state.className = className;
+        state.classEvent = Jfr.beginClass();
+        if (ENABLED) {
+            state.classStart = System.nanoTime();
+        }
+    }
+
+    /**
+     * @param launcher which transformer did it, for JFR
+     * @param inputSize size of the input class, or -1 if it's not known
+     * @param outputSize size of the output class, or -1 if it's not known
+     * @param modified whether OptiFine changed the class, and it's not just deobfuscated
+     */
+    public static void endClass(String launcher, int inputSize, int outputSize, boolean modified) {
+        if (!ENABLED && !Jfr.AVAILABLE) {
+            return;
+        }
+        long now = System.nanoTime();
+        ThreadState state = threadState.get();
+        String name = state.className;
+        Jfr.endClass(state.classEvent, name, launcher, inputSize, outputSize, modified);
+        state.classEvent = null;
+        state.className = null;
+        long start = state.classStart;
+        if (start == 0) {
+            return;
+        }
+        state.classStart = 0;
+        long nanos = now - start;
+        classes.increment();
+        classNanos.add(nanos);
+        lastTransform = now;
+        if (nanos > slowestThreshold) {
+            synchronized (slowest) {
+                slowest.add(new SlowClass(name, nanos));
+                if (slowest.size() > TOP_N) {
+                    slowest.poll();
+                    slowestThreshold = slowest.peek().nanos;
+                }
+            }
+        }
+    }
+
+    public static void count(Counter counter) {
+        if (ENABLED) {
+            counters[counter.ordinal()].increment();
+        }
+    }
+
+    public static void add(Counter counter, long value) {
+        if (ENABLED) {
+            counters[counter.ordinal()].add(value);
+        }
+    }
+
+    private static void logWhenIdle() {
+        try {
+            while (!summaryLogged) {
+                Thread.sleep(1000);
+                long last = lastTransform;
+                if (last != 0 && System.nanoTime() - last > IDLE_NANOS) {
+                    summaryLogged = true;
+                    logSummaryNow();
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
+    private static void logSummaryNow() {
+        LOGGER.info("OptiFineDevTweaker transformed {} classes in {} ms", classes.sum(), TimeUnit.NANOSECONDS.toMillis(classNanos.sum()));
+        for (String line : stageLines()) {
+            LOGGER.info("  {}", line);
+        }
+        for (String line : counterLines()) {
+            LOGGER.info("  {}", line);
+        }
+        LOGGER.info("Slowest classes:");
+        for (String line : slowestLines()) {
+            LOGGER.info("  {}", line);
+        }
+    }
+
+    private static String[] stageLines() {
+        String[] lines = new String[STAGES.length];
+        for (Stage stage : STAGES) {
+            int i = stage.ordinal();
+            lines[i] = String.format("%s: %d times, %.1f ms, %s", stage.name().toLowerCase(), stageCounts[i].sum(),
+                    stageNanos[i].sum() / 1e6, allocationCounter == null ? "allocation not tracked" : String.format("%.1f MiB allocated",
+                            stageAllocated[i].sum() / (1024.0 * 1024.0)));
+        }
+        return lines;
+    }
+
+    private static String[] counterLines() {
+        String[] lines = new String[COUNTERS.length];
+        for (Counter counter : COUNTERS) {
+            int i = counter.ordinal();
+            String line = counter.name().toLowerCase() + ": " + counters[i].sum();
+            // misses come right after their hits
+            if (i > 0 && counter.name().endsWith("_MISS") && COUNTERS[i - 1].name().endsWith("_HIT")) {
+                long hits = counters[i - 1].sum();
+                long total = hits + counters[i].sum();
+                if (total > 0) {
+                    line += String.format(", %.1f%% hit", 100.0 * hits / total);
+                }
+            }
+            lines[i] = line;
+        }
+        return lines;
+    }
+
+    private static String[] slowestLines() {
+        List<SlowClass> list;
+        synchronized (slowest) {
+            list = new ArrayList<>(slowest);
+        }
+        list.sort(Comparator.comparingLong((SlowClass c) -> c.nanos).reversed());
+        String[] lines = new String[list.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = String.format("%s: %.2f ms", list.get(i).name, list.get(i).nanos / 1e6);
+        }
+        return lines;
+    }
+
+    // management
+
+    @Override public long getTransformedClasses() {
+        return classes.sum();
+    }
+
+    @Override public long getTransformMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(classNanos.sum());
+    }
+
+    @Override public String[] getStages() {
+        return stageLines();
+    }
+
+    @Override public String[] getCounters() {
+        return counterLines();
+    }
+
+    @Override public String[] getSlowestClasses() {
+        return slowestLines();
+    }
+
+    @Override public boolean isAllocationTracked() {
+        return allocationCounter != null;
+    }
+
+    @Override public void setAllocationTracked(boolean tracked) {
+        if (tracked == (allocationCounter != null)) {
+            return;
+        }
+        LongSupplier counter = tracked ? allocationCounter() : null;
+        if (tracked && counter == null) {
+            LOGGER.warn("Thread allocation tracking is not supported by this JVM");
+        }
+        allocationCounter = counter;
+    }
+
+    @Override public void logSummary() {
+        logSummaryNow();
+    }
+
+    @Override public void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            stageCounts[i].reset();
+            stageNanos[i].reset();
+            stageAllocated[i].reset();
+        }
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        classes.reset();
+        classNanos.reset();
+        synchronized (slowest) {
+            slowest.clear();
+            slowestThreshold = 0;
+        }
+    }
+
+    private static final class ThreadState {
+        final long[] startTimes = new long[STAGES.length];
+        final long[] startAllocated = new long[STAGES.length];
+        // JFR events, null when not recorded
+        final Object[] stageEvents = new Object[STAGES.length];
+        String className;
+        long classStart;
+        Object classEvent;
+    }
+
+    private static final class SlowClass {
+        final String name;
+        final long nanos;
+
+        SlowClass(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+}
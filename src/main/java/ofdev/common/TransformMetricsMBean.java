@@ -0,0 +1,32 @@
+package ofdev.common;
+
+// management interface of TransformMetrics, registered as ofdev:type=TransformMetrics
+public interface TransformMetricsMBean {
+
+    long getTransformedClasses();
+
+    long getTransformMillis();
+
+    /**
+     * @return one line per stage with count, time and allocated bytes
+     */
+    String[] getStages();
+
+    /**
+     * @return one line per cache counter
+     */
+    String[] getCounters();
+
+    String[] getSlowestClasses();
+
+    /**
+     * Whether stages record the bytes allocated by the transforming thread, off unless -Dofdev.metricsAllocation=true
+     */
+    boolean isAllocationTracked();
+
+    void setAllocationTracked(boolean tracked);
+
+    void logSummary();
+
+    void reset();
+}
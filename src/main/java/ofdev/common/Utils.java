@@ -3,7 +3,9 @@ package ofdev.common;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.awt.GraphicsEnvironment;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
@@ -14,20 +16,22 @@ import java.nio.file.FileVisitor;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Supplier;
 
+import javax.management.ObjectName;
 import javax.swing.JOptionPane;
 
 public class Utils {
     public static final boolean DUMP_CLASSES = !Boolean.getBoolean("ofdev.skipDumpClasses");
     private static final String CUSTOM_MC_VERSION = System.getProperty("ofdev.mcVersion");
     private static final String CUSTOM_MC_JAR = System.getProperty("ofdev.mcjar");
+    private static final String CUSTOM_CACHE_DIR = System.getProperty("ofdev.cacheDir");
     public static final Logger LOGGER = LogManager.getLogger("OptiFineDevTweaker");
 
     public static String mcVersion() {
@@ -79,6 +83,13 @@ public class Utils {
     }
 
     public static Path findMinecraftJar(Path maybeFgCache) {
+        Object event = Jfr.beginJarLookup();
+        Path jar = locateMinecraftJar(maybeFgCache);
+        Jfr.endJarLookup(event, jar);
+        return jar;
+    }
+
+    private static Path locateMinecraftJar(Path maybeFgCache) {
         if (CUSTOM_MC_JAR != null) {
             Path path = Paths.get(CUSTOM_MC_JAR);
             if (!Files.exists(path)) {
@@ -200,6 +211,14 @@ public class Utils {
         return Paths.get(gradleHome);
     }
 
+    // shared between all projects and run configurations, everything in there is keyed by its inputs
+    public static Path cacheDir() {
+        if (CUSTOM_CACHE_DIR != null) {
+            return Paths.get(CUSTOM_CACHE_DIR).toAbsolutePath();
+        }
+        return gradleHome().resolve("caches/optifinedevtweaker").toAbsolutePath();
+    }
+
     public static void rm(Path path) throws IOException {
         if (Files.exists(path)) {
             if (!Files.isDirectory(path)) {
@@ -234,25 +253,32 @@ public class Utils {
             String message = "OptiFine patches not detected in OptiFine jar! This likely means you are trying to use extracted "
                     + "OptiFine jar. This is not going to work. Use jar downloaded from https://optifine.net/ as-is.";
             LOGGER.error(message, new RuntimeException(message));
-            JOptionPane.showMessageDialog(null, message);
+            if (!GraphicsEnvironment.isHeadless()) {
+                JOptionPane.showMessageDialog(null, message);
+            }
         }
     }
 
-    private static void mkdirs(Path location) throws IOException {
-        if (!Files.exists(location)) {
-            mkdirs(location.getParent());
-            Files.createDirectory(location);
-        }
+    // see ClassDump for what gets dumped, written in the background by ClassDumpWriter
+    public static void dumpBytecode(Path loc, String className, byte[] code) {
+        ClassDump.dump(loc, className, code);
     }
 
-    public static void dumpBytecode(Path loc, String className, byte[] code) throws IOException {
-        if (!DUMP_CLASSES) {
-            return;
-        }
-        String subPath = className.replaceAll("\\.", "/") + ".class";
-        Path location = loc.resolve(subPath);
-        mkdirs(location.getParent());
-        Files.write(location, code, StandardOpenOption.CREATE);
+    public static void dumpBytecode(Path loc, String className, Supplier<byte[]> code) {
+        ClassDump.dump(loc, className, code);
+    }
+
+    // registered from a background thread, starting the platform MBean server takes a while
+    public static void registerMBean(Object bean, String name) {
+        Thread thread = new Thread(() -> {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+            } catch (Exception | LinkageError e) {
+                LOGGER.warn("Could not register MBean {}: {}", name, e.toString());
+            }
+        }, "OptiFineDevTweaker MBean registration");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     // reflection
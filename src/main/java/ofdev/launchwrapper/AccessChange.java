@@ -0,0 +1,122 @@
+package ofdev.launchwrapper;
+
+import static java.lang.reflect.Modifier.isPrivate;
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PROTECTED;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+
+import java.lang.reflect.Modifier;
+
+// access transformer change reconstructed from the difference between vanilla and Forge class
+class AccessChange {
+
+    public static final int RELEVANT_BITS = Modifier.PRIVATE | Modifier.PUBLIC | Modifier.PROTECTED | Modifier.FINAL;
+
+    final Target target;
+    final String name;
+    final String desc;
+    // kept to store the change in AccessChangeIndex
+    final int oldMod;
+    final int newMod;
+    private final boolean isStatic;
+
+    private final Visibility newVisibility;
+    private boolean changeFinal = false;
+    private boolean markFinal = false;
+
+    AccessChange(Target target, String name, String desc, int oldMod, int newMod) {
+        if (Modifier.isStatic(oldMod) != Modifier.isStatic(newMod)) {
+            throw new IllegalArgumentException("Both targets must be either static or nonstatic!");
+        }
+        this.isStatic = Modifier.isStatic(oldMod);
+        this.target = target;
+        this.name = name;
+        this.desc = desc;
+        this.oldMod = oldMod;
+        this.newMod = newMod;
+        this.newVisibility = getModVisibility(newMod);
+        if (Modifier.isFinal(oldMod) && !Modifier.isFinal(newMod)) {
+            changeFinal = true;
+            markFinal = false;
+        } else if (!Modifier.isFinal(oldMod) && Modifier.isFinal(newMod)) {
+            changeFinal = true;
+            markFinal = true;
+        }
+    }
+
+    boolean opensPrivate() {
+        return newVisibility != Visibility.PRIVATE;
+    }
+
+    int apply(int mod) {
+        if (Modifier.isStatic(mod) != isStatic) {
+            return mod;
+        }
+
+        Visibility t = newVisibility;
+        int ret = (mod & ~7);
+
+        switch (mod & 7) {
+            case ACC_PRIVATE:
+                ret |= t.asInt();
+                break;
+            case 0: // default
+                ret |= (t.asInt() != ACC_PRIVATE ? t.asInt() : 0 /* default */);
+                break;
+            case ACC_PROTECTED:
+                ret |= (t.asInt() != ACC_PRIVATE && t.asInt() != 0 /* default */ ? t.asInt() : ACC_PROTECTED);
+                break;
+            case ACC_PUBLIC:
+                ret |= (t.asInt() != ACC_PRIVATE && t.asInt() != 0 /* default */ && t.asInt() != ACC_PROTECTED ? t.asInt() : ACC_PUBLIC);
+                break;
+            default:
+                throw new RuntimeException("The fuck?");
+        }
+
+        // Clear the "final" marker on fields only if specified in control field
+        if (changeFinal) {
+            if (markFinal) {
+                ret |= ACC_FINAL;
+            } else {
+                ret &= ~ACC_FINAL;
+            }
+        }
+        return ret;
+    }
+
+    private static Visibility getModVisibility(int modifiers) {
+        if (Modifier.isPublic(modifiers)) {
+            return Visibility.PUBLIC;
+        }
+        if (Modifier.isProtected(modifiers)) {
+            return Visibility.PROTECTED;
+        }
+        if (isPrivate(modifiers)) {
+            return Visibility.PRIVATE;
+        }
+        return Visibility.DEFAULT;
+    }
+
+    enum Target {
+        CLASS, METHOD, FIELD
+    }
+
+    private enum Visibility {
+        PRIVATE, DEFAULT, PROTECTED, PUBLIC;
+
+        public int asInt() {
+            switch (this) {
+                case PUBLIC:
+                    return Modifier.PUBLIC;
+                case PROTECTED:
+                    return Modifier.PROTECTED;
+                case DEFAULT:
+                    return 0;
+                case PRIVATE:
+                    return Modifier.PRIVATE;
+            }
+            throw new Error();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package ofdev.launchwrapper;
+
+import static ofdev.common.Utils.LOGGER;
+
+import ofdev.common.TransformCache;
+import ofdev.common.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Access transformer changes of each transformed class, so that vanilla and Forge class headers don't need to be compared again
+ * on later launches.
+ * <p>
+ * Filled as classes are transformed and saved on shutdown. An entry is only used when the Forge class has the same hash as when
+ * it was stored, so changed access transformers are noticed. The file is named after the fingerprint of the Minecraft jar and
+ * mappings, which decide what the vanilla side looks like.
+ */
+final class AccessChangeIndex {
+
+    private static final int MAGIC = 0x4F464441; // OFDA
+    private static final int VERSION = 1;
+
+    static final boolean ENABLED = !Boolean.getBoolean("ofdev.skipAccessIndex");
+
+    private final Path file;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty;
+
+    private AccessChangeIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * @return the index, or null if it's disabled or can't be used
+     */
+    static AccessChangeIndex open(Collection<?> inputs) {
+        if (!ENABLED) {
+            return null;
+        }
+        try {
+            Path file = Utils.cacheDir().resolve("access").resolve(TransformCache.fingerprint("access", inputs) + ".bin");
+            AccessChangeIndex index = new AccessChangeIndex(file);
+            if (Files.exists(file)) {
+                try {
+                    index.load();
+                    LOGGER.info("Loaded access transformer index {} with {} classes", file, index.entries.size());
+                } catch (IOException | RuntimeException e) {
+                    LOGGER.warn("Could not read access transformer index {}, starting with empty index: {}", file, e.toString());
+                    index.entries.clear();
+                }
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(index::save, "OptiFineDevTweaker access index save"));
+            return index;
+        } catch (IOException e) {
+            LOGGER.error("Could not open access transformer index, continuing without it", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return stored changes for this class, or null if they aren't known for this version of the Forge class
+     */
+    AccessChanges get(String className, byte[] forgeCode) {
+        Entry entry = entries.get(className);
+        return entry == null || entry.forgeHash != hash(forgeCode) ? null : entry.changes;
+    }
+
+    void put(String className, byte[] forgeCode, AccessChanges changes) {
+        entries.put(className, new Entry(hash(forgeCode), changes));
+        dirty = true;
+    }
+
+    private static long hash(byte[] code) {
+        return TransformCache.quickHash(code);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not an access transformer index or unsupported version");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String className = in.readUTF();
+                long forgeHash = in.readLong();
+                AccessChange classChange = null;
+                if (in.readBoolean()) {
+                    classChange = new AccessChange(AccessChange.Target.CLASS, null, null, in.readInt(), in.readInt());
+                }
+                AccessChanges changes = new AccessChanges(classChange);
+                readMembers(in, AccessChange.Target.FIELD, changes);
+                readMembers(in, AccessChange.Target.METHOD, changes);
+                entries.put(className, new Entry(forgeHash, changes));
+            }
+        }
+    }
+
+    private static void readMembers(DataInputStream in, AccessChange.Target target, AccessChanges changes) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            changes.add(new AccessChange(target, in.readUTF(), in.readUTF(), in.readInt(), in.readInt()));
+        }
+    }
+
+    void save() {
+        if (!dirty) {
+            return;
+        }
+        Path tmp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            // classes may still be transformed while saving
+            List<Map.Entry<String, Entry>> snapshot = new ArrayList<>(entries.entrySet());
+            tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Entry> e : snapshot) {
+                    out.writeUTF(e.getKey());
+                    out.writeLong(e.getValue().forgeHash);
+                    AccessChanges changes = e.getValue().changes;
+                    out.writeBoolean(changes.classChange != null);
+                    if (changes.classChange != null) {
+                        out.writeInt(changes.classChange.oldMod);
+                        out.writeInt(changes.classChange.newMod);
+                    }
+                    writeMembers(out, changes.fields());
+                    writeMembers(out, changes.methods());
+                }
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+            dirty = false;
+        } catch (IOException e) {
+            LOGGER.warn("Could not write access transformer index {}: {}", file, e.toString());
+        } finally {
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private static void writeMembers(DataOutputStream out, List<AccessChange> changes) throws IOException {
+        out.writeInt(changes.size());
+        for (AccessChange change : changes) {
+            out.writeUTF(change.name);
+            out.writeUTF(change.desc);
+            out.writeInt(change.oldMod);
+            out.writeInt(change.newMod);
+        }
+    }
+
+    private static final class Entry {
+        final long forgeHash;
+        final AccessChanges changes;
+
+        Entry(long forgeHash, AccessChanges changes) {
+            this.forgeHash = forgeHash;
+            this.changes = changes;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ofdev.launchwrapper;
+
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+// everything access transformers changed in one class, reconstructed from member headers of vanilla and Forge class
+final class AccessChanges {
+
+    final AccessChange classChange;
+    private final List<AccessChange> fields = new ArrayList<>();
+    private final List<AccessChange> methods = new ArrayList<>();
+    // member -> index in the list above
+    private final MemberTable fieldIndex = new MemberTable();
+    private final MemberTable methodIndex = new MemberTable();
+
+    AccessChanges(AccessChange classChange) {
+        this.classChange = classChange;
+    }
+
+    static AccessChanges between(ClassHeaders vanilla, ClassHeaders forge) {
+        AccessChange classChange = null;
+        if ((vanilla.access & AccessChange.RELEVANT_BITS) != (forge.access & AccessChange.RELEVANT_BITS)) {
+            classChange = new AccessChange(AccessChange.Target.CLASS, null, null, vanilla.access, forge.access);
+        }
+        AccessChanges changes = new AccessChanges(classChange);
+        for (int i = 0; i < vanilla.methods.size(); i++) {
+            AccessChange change = memberChange(AccessChange.Target.METHOD, vanilla.methods, i, forge.methods);
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        for (int i = 0; i < vanilla.fields.size(); i++) {
+            AccessChange change = memberChange(AccessChange.Target.FIELD, vanilla.fields, i, forge.fields);
+            if (change != null) {
+                changes.add(change);
+            }
+        }
+        return changes;
+    }
+
+    private static AccessChange memberChange(AccessChange.Target target, MemberTable vanilla, int i, MemberTable forge) {
+        String name = vanilla.name(i);
+        String desc = vanilla.desc(i);
+        int vanillaAccess = vanilla.value(i);
+        int forgeAccess = forge.get(name, desc);
+        if (forgeAccess < 0 || Modifier.isStatic(vanillaAccess) != Modifier.isStatic(forgeAccess)
+                || (vanillaAccess & AccessChange.RELEVANT_BITS) == (forgeAccess & AccessChange.RELEVANT_BITS)) {
+            return null;
+        }
+        return new AccessChange(target, name, desc, vanillaAccess, forgeAccess);
+    }
+
+    void add(AccessChange change) {
+        if (change.target == AccessChange.Target.METHOD) {
+            methodIndex.put(change.name, change.desc, methods.size());
+            methods.add(change);
+        } else {
+            fieldIndex.put(change.name, change.desc, fields.size());
+            fields.add(change);
+        }
+    }
+
+    List<AccessChange> fields() {
+        return fields;
+    }
+
+    List<AccessChange> methods() {
+        return methods;
+    }
+
+    AccessChange field(String name, String desc) {
+        int i = fieldIndex.get(name, desc);
+        return i < 0 ? null : fields.get(i);
+    }
+
+    AccessChange method(String name, String desc) {
+        int i = methodIndex.get(name, desc);
+        return i < 0 ? null : methods.get(i);
+    }
+
+    boolean isEmpty() {
+        return classChange == null && fields.isEmpty() && methods.isEmpty();
+    }
+
+    // whether some private method may become accessible, so calls to it need INVOKEVIRTUAL
+    boolean mayOpenPrivateMethods() {
+        for (AccessChange change : methods) {
+            if (change.opensPrivate() && !change.name.equals("<init>")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * If we changed from private to something else we need to replace all INVOKESPECIAL calls to this method with INVOKEVIRTUAL
+     * so that overridden methods will be called. Only need to scan this class, because obviously the method was private.
+     * Constructors always use INVOKESPECIAL.
+     *
+     * @param target headers of the class the changes will be applied to
+     * @return methods calls to which need INVOKEVIRTUAL
+     */
+    MemberTable invokeSpecialFixes(ClassHeaders target) {
+        MemberTable fixes = new MemberTable();
+        for (int i = 0; i < target.methods.size(); i++) {
+            String name = target.methods.name(i);
+            String desc = target.methods.desc(i);
+            int access = target.methods.value(i);
+            AccessChange change = method(name, desc);
+            if (change == null || name.equals("<init>")) {
+                continue;
+            }
+            boolean wasPrivate = (access & ACC_PRIVATE) == ACC_PRIVATE;
+            boolean isNowPrivate = (change.apply(access) & ACC_PRIVATE) == ACC_PRIVATE;
+            if (wasPrivate && !isNowPrivate) {
+                fixes.put(name, desc, 0);
+            }
+        }
+        return fixes;
+    }
+}
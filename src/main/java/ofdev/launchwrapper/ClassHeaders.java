@@ -0,0 +1,35 @@
+package ofdev.launchwrapper;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+// access flags of a class and its members, meant to be read with SKIP_CODE
+final class ClassHeaders extends ClassVisitor {
+
+    int access;
+    final MemberTable fields = new MemberTable();
+    final MemberTable methods = new MemberTable(16);
+
+    ClassHeaders() {
+        super(Opcodes.ASM5);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.access = access;
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+        fields.put(name, desc, access);
+        return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+        methods.put(name, desc, access);
+        return null;
+    }
+}
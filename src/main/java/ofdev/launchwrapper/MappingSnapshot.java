@@ -0,0 +1,214 @@
+package ofdev.launchwrapper;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled form of the joined notch to MCP mappings, so that they don't need to be parsed and joined on every launch.
+ * <p>
+ * The file is named after the hash of the mapping sources, so a stale snapshot is never read, it's just not found.
+ * <p>
+ * A snapshot that was read only indexes where the members of each class are. They are read from the mapped file the first time
+ * the class is looked up, most classes never are in a session.
+ */
+class MappingSnapshot {
+
+    private static final int MAGIC = 0x4F46444D; // OFDM
+    private static final int VERSION = 2;
+
+    final Map<String, String> classNameMap;
+    final Map<String, String> classNameMapInverse;
+    final SymbolTable symbols;
+    // to write
+    private final Map<String, MemberMap> rawMethodMaps;
+    private final Map<String, MemberMap> rawFieldMaps;
+    // read
+    final LazyMemberMaps methodMaps;
+    final LazyMemberMaps fieldMaps;
+
+    MappingSnapshot(Map<String, String> classNameMap, Map<String, String> classNameMapInverse, SymbolTable symbols,
+            Map<String, MemberMap> rawMethodMaps, Map<String, MemberMap> rawFieldMaps) {
+        this.classNameMap = classNameMap;
+        this.classNameMapInverse = classNameMapInverse;
+        this.symbols = symbols;
+        this.rawMethodMaps = rawMethodMaps;
+        this.rawFieldMaps = rawFieldMaps;
+        this.methodMaps = null;
+        this.fieldMaps = null;
+    }
+
+    private MappingSnapshot(Map<String, String> classNameMap, Map<String, String> classNameMapInverse, SymbolTable symbols,
+            LazyMemberMaps methodMaps, LazyMemberMaps fieldMaps) {
+        this.classNameMap = classNameMap;
+        this.classNameMapInverse = classNameMapInverse;
+        this.symbols = symbols;
+        this.rawMethodMaps = null;
+        this.rawFieldMaps = null;
+        this.methodMaps = methodMaps;
+        this.fieldMaps = fieldMaps;
+    }
+
+    /**
+     * Member maps of all classes of a snapshot, by the offset of each one in the mapped file. Safe to use from any number of
+     * threads, reads don't move the position of the buffer.
+     */
+    static final class LazyMemberMaps {
+        private final MappedByteBuffer buf;
+        private final Map<String, Integer> offsets;
+
+        private LazyMemberMaps(MappedByteBuffer buf, Map<String, Integer> offsets) {
+            this.buf = buf;
+            this.offsets = offsets;
+        }
+
+        /**
+         * @return a new map with the members of the class, null if the snapshot has none for it
+         */
+        MemberMap read(String owner) {
+            Integer offset = offsets.get(owner);
+            if (offset == null) {
+                return null;
+            }
+            int size = buf.getInt(offset);
+            MemberMap map = new MemberMap(size);
+            for (int i = 0, pos = offset + 4; i < size; i++, pos += 12) {
+                map.put(buf.getLong(pos), buf.getInt(pos + 8));
+            }
+            return map;
+        }
+
+        int classes() {
+            return offsets.size();
+        }
+    }
+
+    static MappingSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("Not a mapping snapshot or unsupported version: " + file);
+            }
+            // strings are written with a 16 bit length, so this is always big enough
+            byte[] strBuf = new byte[0xFFFF];
+            Map<String, String> classNameMap = readMap(buf, strBuf);
+            Map<String, String> classNameMapInverse = readMap(buf, strBuf);
+            SymbolTable symbols = readSymbols(buf, strBuf);
+            LazyMemberMaps methodMaps = indexMemberMaps(buf, strBuf);
+            LazyMemberMaps fieldMaps = indexMemberMaps(buf, strBuf);
+            // the mapping stays valid after the channel is closed
+            return new MappingSnapshot(classNameMap, classNameMapInverse, symbols, methodMaps, fieldMaps);
+        }
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                writeMap(out, classNameMap);
+                writeMap(out, classNameMapInverse);
+                writeSymbols(out, symbols);
+                writeMemberMaps(out, rawMethodMaps);
+                writeMemberMaps(out, rawFieldMaps);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // ids are assigned in order, so they match the ids the snapshot was written with
+    private static SymbolTable readSymbols(MappedByteBuffer buf, byte[] strBuf) {
+        int count = buf.getInt();
+        SymbolTable symbols = new SymbolTable(count);
+        for (int i = 0; i < count; i++) {
+            symbols.intern(readString(buf, strBuf));
+        }
+        return symbols;
+    }
+
+    private static LazyMemberMaps indexMemberMaps(MappedByteBuffer buf, byte[] strBuf) {
+        int count = buf.getInt();
+        Map<String, Integer> offsets = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String owner = readString(buf, strBuf);
+            int offset = buf.position();
+            int size = buf.getInt();
+            buf.position(buf.position() + size * 12);
+            offsets.put(owner, offset);
+        }
+        return new LazyMemberMaps(buf, offsets);
+    }
+
+    private static Map<String, String> readMap(MappedByteBuffer buf, byte[] strBuf) {
+        int count = buf.getInt();
+        Map<String, String> map = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String key = readString(buf, strBuf);
+            map.put(key, readString(buf, strBuf));
+        }
+        return map;
+    }
+
+    private static String readString(MappedByteBuffer buf, byte[] strBuf) {
+        int length = buf.getShort() & 0xFFFF;
+        buf.get(strBuf, 0, length);
+        return new String(strBuf, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static void writeSymbols(DataOutputStream out, SymbolTable symbols) throws IOException {
+        out.writeInt(symbols.size());
+        for (int i = 0; i < symbols.size(); i++) {
+            writeString(out, symbols.name(i));
+        }
+    }
+
+    private static void writeMemberMaps(DataOutputStream out, Map<String, MemberMap> maps) throws IOException {
+        out.writeInt(maps.size());
+        for (Map.Entry<String, MemberMap> e : maps.entrySet()) {
+            writeString(out, e.getKey());
+            MemberMap map = e.getValue();
+            out.writeInt(map.size());
+            map.forEach((key, value) -> {
+                out.writeLong(key);
+                out.writeInt(value);
+            });
+        }
+    }
+
+    private static void writeMap(DataOutputStream out, Map<String, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<String, String> e : map.entrySet()) {
+            writeString(out, e.getKey());
+            writeString(out, e.getValue());
+        }
+    }
+
+    private static void writeString(OutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long for mapping snapshot: " + s.substring(0, 64) + "...");
+        }
+        out.write(bytes.length >>> 8);
+        out.write(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,265 @@
+package ofdev.launchwrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class and member mappings read straight from the bytes of a mapping file, without making strings of lines or names. There is
+ * one implementation per format: {@link SrgMappingSource}, {@link TsrgMappingSource} for TSRG and TSRG2, and
+ * {@link TinyMappingSource} for Tiny v2. {@link #open} picks one by the first line of the file. Whatever the format, the records are
+ * put into the same tables by OptifineDevRemapper.
+ * <p>
+ * A source covers a range of the buffer that starts at a line that doesn't depend on the lines before it, so a big file can be
+ * read by several threads at once. Positions in a record are indexes into {@link #buf} and are valid until the next call to
+ * {@link #next()}.
+ */
+abstract class MappingSource {
+
+    enum Kind {
+        CLASS, METHOD, FIELD
+    }
+
+    // more than any format has in a line that is read
+    private static final int MAX_TOKENS = 16;
+
+    final ByteBuffer buf;
+    private final int end;
+    private int pos;
+
+    // the current line, indent is the number of tabs or spaces before the first token
+    int indent;
+    int tokens;
+    final int[] starts = new int[MAX_TOKENS];
+    final int[] ends = new int[MAX_TOKENS];
+
+    // the current record. For a class, owner is the old name and newOwner the new one. For a member, descStart is -1 if the
+    // file has no descriptor in the old namespace
+    Kind kind;
+    int ownerStart, ownerEnd;
+    int nameStart, nameEnd;
+    int descStart, descEnd;
+    int newOwnerStart, newOwnerEnd;
+    int newNameStart, newNameEnd;
+
+    MappingSource(ByteBuffer buf, int from, int to) {
+        this.buf = buf;
+        this.pos = from;
+        this.end = to;
+    }
+
+    /**
+     * Moves to the next class, method or field record, everything else in the file is skipped.
+     *
+     * @return false at the end of the range
+     */
+    abstract boolean next();
+
+    static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // compressed sources can't be mapped, they are decompressed into one array
+    static ByteBuffer read(InputStream in) throws IOException {
+        byte[] data = new byte[1 << 16];
+        int size = 0;
+        for (int n; (n = in.read(data, size, data.length - size)) >= 0; ) {
+            size += n;
+            if (size == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+        }
+        return ByteBuffer.wrap(data, 0, size);
+    }
+
+    /**
+     * Sources for consecutive ranges of the file of at least chunkSize bytes, in the format found from its first line.
+     *
+     * @param from name of the namespace to map from in formats that name them, null for the first one
+     * @param to name of the namespace to map to in formats that name them, null for the last one
+     */
+    static List<MappingSource> open(ByteBuffer buf, String from, String to, int chunkSize) throws IOException {
+        String header = firstLine(buf);
+        if (header.startsWith("tiny\t2\t")) {
+            return TinyMappingSource.split(buf, header, from, to, chunkSize);
+        }
+        if (header.startsWith("tsrg2 ")) {
+            return TsrgMappingSource.split(buf, header, from, to, chunkSize);
+        }
+        if (header.isEmpty() || header.startsWith("PK:") || header.startsWith("CL:") || header.startsWith("FD:") || header.startsWith("MD:")) {
+            return SrgMappingSource.split(buf, chunkSize);
+        }
+        // TSRG v1 has no header
+        return TsrgMappingSource.split(buf, null, from, to, chunkSize);
+    }
+
+    private static String firstLine(ByteBuffer buf) {
+        int length = 0;
+        while (length < buf.limit() && !isLineEnd(buf.get(length))) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buf.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // index of the namespace in the header of a format that has them
+    static int namespace(List<String> namespaces, String name, int byDefault) throws IOException {
+        if (name == null) {
+            return byDefault;
+        }
+        int index = namespaces.indexOf(name);
+        if (index < 0) {
+            throw new IOException("Mappings have no namespace " + name + ", only " + namespaces);
+        }
+        return index;
+    }
+
+    interface Factory {
+        MappingSource create(int from, int to);
+    }
+
+    /**
+     * Splits the buffer from bodyStart into ranges of at least chunkSize bytes that end at the end of a line. When nested is set,
+     * indented lines belong to the line above them, so a range never starts at one.
+     */
+    static List<MappingSource> split(ByteBuffer buf, int bodyStart, int chunkSize, boolean nested, Factory factory) {
+        List<MappingSource> sources = new ArrayList<>();
+        int limit = buf.limit();
+        for (int from = bodyStart; from < limit; ) {
+            int to = chunkSize < limit - from ? from + chunkSize : limit;
+            while (to < limit && !isLineEnd(buf.get(to - 1))) {
+                to++;
+            }
+            while (nested && to < limit && (isIndent(buf.get(to)) || isLineEnd(buf.get(to)))) {
+                to++;
+                while (to < limit && !isLineEnd(buf.get(to - 1))) {
+                    to++;
+                }
+            }
+            sources.add(factory.create(from, to));
+            from = to;
+        }
+        return sources;
+    }
+
+    /**
+     * Reads the next line into tokens. With tabs set, tokens are separated by single tabs and can be empty, like in Tiny, otherwise
+     * by any run of whitespace and colons, same as {@code line.split("[:\\s]+")}.
+     *
+     * @return false at the end of the range
+     */
+    final boolean nextLine(boolean tabs) {
+        if (pos >= end) {
+            return false;
+        }
+        int i = pos;
+        while (i < end && isIndent(buf.get(i))) {
+            i++;
+        }
+        indent = i - pos;
+        int count = 0;
+        if (tabs) {
+            for (int start = i; ; i++) {
+                byte b = i < end ? buf.get(i) : (byte) '\n';
+                if (b == '\t' || isLineEnd(b)) {
+                    count = addToken(count, start, i);
+                    if (b != '\t') {
+                        break;
+                    }
+                    start = i + 1;
+                }
+            }
+            // nothing after the indent
+            if (count == 1 && starts[0] == ends[0]) {
+                count = 0;
+            }
+        } else {
+            while (i < end) {
+                byte b = buf.get(i);
+                if (isLineEnd(b)) {
+                    break;
+                }
+                if (isSeparator(b)) {
+                    i++;
+                    continue;
+                }
+                int start = i;
+                while (i < end && !isSeparator(buf.get(i))) {
+                    i++;
+                }
+                count = addToken(count, start, i);
+            }
+        }
+        tokens = Math.min(count, MAX_TOKENS);
+        pos = i + 1;
+        // CRLF is one line end, otherwise the \n reads as an empty line, which ends the class in Tiny
+        if (i < end && buf.get(i) == '\r' && pos < end && buf.get(pos) == '\n') {
+            pos++;
+        }
+        return true;
+    }
+
+    private int addToken(int count, int start, int end) {
+        if (count < MAX_TOKENS) {
+            starts[count] = start;
+            ends[count] = end;
+        }
+        return count + 1;
+    }
+
+    final boolean tokenIs(int token, String text) {
+        if (ends[token] - starts[token] != text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (buf.get(starts[token] + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    final void classRecord(int oldToken, int newToken) {
+        kind = Kind.CLASS;
+        ownerStart = starts[oldToken];
+        ownerEnd = ends[oldToken];
+        newOwnerStart = starts[newToken];
+        newOwnerEnd = ends[newToken];
+    }
+
+    /**
+     * @return index of the last '/' in the token, which separates the owner class from the member name, or -1 if there is none
+     */
+    final int slash(int token) {
+        for (int i = ends[token] - 1; i >= starts[token]; i--) {
+            if (buf.get(i) == '/') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static boolean isLineEnd(byte b) {
+        return b == '\n' || b == '\r';
+    }
+
+    private static boolean isIndent(byte b) {
+        return b == '\t' || b == ' ';
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == ':' || b == '\t' || b == '\n' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+}
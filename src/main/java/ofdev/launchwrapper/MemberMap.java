@@ -0,0 +1,158 @@
+package ofdev.launchwrapper;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Open addressing map from member key to the symbol id of the new name. A key is the symbol of the member name and
+ * the symbol of its descriptor, or {@link #NO_DESC} for entries that match any descriptor.
+ * <p>
+ * One thread at a time may modify a map, OptifineDevRemapper does that under the lock of the class, while any number of threads
+ * read it without locking. The value of a slot is written before its key is published, and a grown table is published as a whole.
+ */
+final class MemberMap {
+
+    static final int NO_DESC = -1;
+
+    // name ids are never negative, so no real key has the sign bit set
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private volatile Table table;
+    private int size;
+
+    private static final class Table {
+        final AtomicLongArray keys;
+        final int[] values;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                keys.lazySet(i, EMPTY);
+            }
+        }
+    }
+
+    MemberMap() {
+        this(4);
+    }
+
+    MemberMap(int expectedSize) {
+        table = new Table(tableSize(expectedSize));
+    }
+
+    MemberMap(MemberMap other) {
+        Table from = other.table;
+        Table copy = new Table(from.values.length);
+        for (int i = 0; i < from.values.length; i++) {
+            copy.values[i] = from.values[i];
+            copy.keys.lazySet(i, from.keys.get(i));
+        }
+        table = copy;
+        size = other.size;
+    }
+
+    static long key(int name, int desc) {
+        return ((long) name << 32) | (desc & 0xFFFFFFFFL);
+    }
+
+    static int name(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int desc(long key) {
+        return (int) key;
+    }
+
+    /**
+     * @return symbol id of the new name, or -1 if there is no mapping for this key
+     */
+    int get(long key) {
+        Table table = this.table;
+        AtomicLongArray keys = table.keys;
+        int mask = table.values.length - 1;
+        for (int i = mix(key) & mask; ; i = (i + 1) & mask) {
+            long k = keys.get(i);
+            if (k == key) {
+                return table.values[i];
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    boolean containsKey(long key) {
+        return get(key) >= 0;
+    }
+
+    void put(long key, int value) {
+        Table table = this.table;
+        int mask = table.values.length - 1;
+        int i = mix(key) & mask;
+        for (long k; (k = table.keys.get(i)) != EMPTY; i = (i + 1) & mask) {
+            if (k == key) {
+                table.values[i] = value;
+                return;
+            }
+        }
+        // a reader that sees the key sees the value too
+        table.values[i] = value;
+        table.keys.lazySet(i, key);
+        if (++size * 2 > table.values.length) {
+            this.table = rehash(table, table.values.length * 2);
+        }
+    }
+
+    void putAll(MemberMap other) {
+        other.forEach(this::put);
+    }
+
+    int size() {
+        return size;
+    }
+
+    <E extends Exception> void forEach(EntryConsumer<E> action) throws E {
+        Table table = this.table;
+        for (int i = 0; i < table.values.length; i++) {
+            long key = table.keys.get(i);
+            if (key != EMPTY) {
+                action.accept(key, table.values[i]);
+            }
+        }
+    }
+
+    private static Table rehash(Table old, int capacity) {
+        Table table = new Table(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < old.values.length; j++) {
+            long key = old.keys.get(j);
+            if (key != EMPTY) {
+                int i = mix(key) & mask;
+                while (table.keys.get(i) != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table.values[i] = old.values[j];
+                table.keys.lazySet(i, key);
+            }
+        }
+        return table;
+    }
+
+    // power of 2 that keeps the load factor at most 0.5
+    static int tableSize(int expectedSize) {
+        return Math.max(8, Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) << 1);
+    }
+
+    static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static int mix(long key) {
+        return mix((int) (key ^ (key >>> 32)));
+    }
+
+    interface EntryConsumer<E extends Exception> {
+        void accept(long key, int value) throws E;
+    }
+}
@@ -0,0 +1,101 @@
+package ofdev.launchwrapper;
+
+import java.util.Arrays;
+
+/**
+ * Class members by name and descriptor, each with an int value, kept in insertion order. Name and descriptor are hashed
+ * separately, so looking a member up doesn't need a name + desc key string.
+ */
+final class MemberTable {
+
+    private String[] names;
+    private String[] descs;
+    private int[] values;
+    private int size;
+
+    // open addressing, a slot holds index + 1, 0 is empty
+    private int[] slots;
+
+    MemberTable() {
+        this(8);
+    }
+
+    MemberTable(int expectedSize) {
+        slots = new int[MemberMap.tableSize(expectedSize)];
+        names = new String[slots.length / 2];
+        descs = new String[slots.length / 2];
+        values = new int[slots.length / 2];
+    }
+
+    void put(String name, String desc, int value) {
+        int mask = slots.length - 1;
+        int i = hash(name, desc) & mask;
+        for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            if (names[slot - 1].equals(name) && descs[slot - 1].equals(desc)) {
+                values[slot - 1] = value;
+                return;
+            }
+        }
+        if (size == names.length) {
+            grow();
+            put(name, desc, value);
+            return;
+        }
+        names[size] = name;
+        descs[size] = desc;
+        values[size] = value;
+        slots[i] = ++size;
+    }
+
+    /**
+     * @return value of the member, or -1 if it's not in the table
+     */
+    int get(String name, String desc) {
+        int mask = slots.length - 1;
+        for (int i = hash(name, desc) & mask, slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            if (names[slot - 1].equals(name) && descs[slot - 1].equals(desc)) {
+                return values[slot - 1];
+            }
+        }
+        return -1;
+    }
+
+    boolean contains(String name, String desc) {
+        return get(name, desc) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    String desc(int index) {
+        return descs[index];
+    }
+
+    int value(int index) {
+        return values[index];
+    }
+
+    private void grow() {
+        names = Arrays.copyOf(names, names.length * 2);
+        descs = Arrays.copyOf(descs, descs.length * 2);
+        values = Arrays.copyOf(values, values.length * 2);
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int index = 0; index < size; index++) {
+            int i = hash(names[index], descs[index]) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = index + 1;
+        }
+    }
+
+    private static int hash(String name, String desc) {
+        return MemberMap.mix(name.hashCode() * 31 + desc.hashCode());
+    }
+}
@@ -18,7 +18,7 @@ import java.util.List;
 public class OptifineDevAdapter extends RemappingClassAdapter {
 
     public OptifineDevAdapter(ClassVisitor cv) {
-        super(cv, OptifineDevRemapper.NOTCH_MCP);
+        super(cv, OptifineDevRemapper.notchMcp());
     }
 
     private static final List<Handle> META_FACTORIES = Arrays.asList(
@@ -37,16 +37,16 @@ public class OptifineDevAdapter extends RemappingClassAdapter {
         if (interfaces == null) {
             interfaces = new String[0];
         }
-        String notchName = OptifineDevRemapper.NOTCH_MCP.notchFromMcpOrDefault(name);
-        String notchSuperName = OptifineDevRemapper.NOTCH_MCP.notchFromMcpOrDefault(superName);
-        String[] notchInterfaces = Arrays.stream(interfaces).map(OptifineDevRemapper.NOTCH_MCP::notchFromMcpOrDefault).toArray(String[]::new);
-        OptifineDevRemapper.NOTCH_MCP.mergeSuperMaps(notchName, notchSuperName, notchInterfaces);
+        String notchName = OptifineDevRemapper.notchMcp().notchFromMcpOrDefault(name);
+        String notchSuperName = OptifineDevRemapper.notchMcp().notchFromMcpOrDefault(superName);
+        String[] notchInterfaces = Arrays.stream(interfaces).map(OptifineDevRemapper.notchMcp()::notchFromMcpOrDefault).toArray(String[]::new);
+        OptifineDevRemapper.notchMcp().mergeSuperMaps(notchName, notchSuperName, notchInterfaces);
         super.visit(version, access, name, signature, superName, interfaces);
     }
 
     @Override
     public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
-        OptifineDevRemapper remapper = OptifineDevRemapper.NOTCH_MCP;
+        OptifineDevRemapper remapper = OptifineDevRemapper.notchMcp();
         FieldVisitor fv = cv.visitField(access,
                 remapper.mapMemberFieldName(className, name, desc),
                 remapper.mapDesc(desc), remapper.mapSignature(signature, true),
@@ -73,7 +73,7 @@ public class OptifineDevAdapter extends RemappingClassAdapter {
             String fieldName = remapper.mapFieldName(originalType, originalName, desc);
             String newDesc = remapper.mapDesc(desc);
             if (opcode == Opcodes.GETSTATIC /*&& type.startsWith("net/minecraft/") && newDesc.startsWith("Lnet/minecraft/")*/) {
-                String replDesc = OptifineDevRemapper.NOTCH_MCP.getStaticFieldType(originalType, originalName, type, fieldName);
+                String replDesc = OptifineDevRemapper.notchMcp().getStaticFieldType(originalType, originalName, type, fieldName);
                 if (replDesc != null) {
                     newDesc = remapper.mapDesc(replDesc);
                 }
@@ -0,0 +1,201 @@
+package ofdev.launchwrapper;
+
+import static ofdev.common.Utils.LOGGER;
+
+import net.minecraft.launchwrapper.Launch;
+import net.minecraft.launchwrapper.LaunchClassLoader;
+import ofdev.common.TransformCache;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+/**
+ * Runs the LaunchWrapper transformation over every class OptiFine patches or adds, ahead of time and in parallel, and writes the
+ * result to a jar that the tweaker picks up instead of transforming OptiFine at runtime, see {@link PrebuiltJar}.
+ * <p>
+ * It has to run with the same classpath as the game in dev environment (Forge jar with MCP names, LaunchWrapper, log4j, lzma) plus
+ * this jar, OptiFine jar doesn't have to be on it. For example from the mod project:
+ * <pre>
+ * task deobfOptiFine(type: JavaExec) {
+ *     classpath = sourceSets.main.runtimeClasspath
+ *     main = 'ofdev.launchwrapper.OptifineDevDeobfuscator'
+ *     args '--optifine', 'libs/OptiFine.jar', '--minecraft', 'path/to/client.jar', '--notch-mcp', 'path/to/notch-mcp.srg'
+ * }
+ * </pre>
+ * Options:
+ * <ul>
+ *     <li>{@code --optifine <jar>} OptiFine jar, required</li>
+ *     <li>{@code --minecraft <jar>} vanilla Minecraft jar, same as -Dofdev.mcjar</li>
+ *     <li>{@code --notch-mcp <srg>} notch-mcp mappings of ForgeGradle 2, or {@code --srg-mcp <srg>} with {@code --mc-version <version>}
+ *     for ForgeGradle 3, the same files ForgeGradle gives to the game</li>
+ *     <li>{@code --output <jar>} where to write it, by default the prebuilt directory in the cache directory where the tweaker finds
+ *     it without any configuration. Anywhere else it needs -Dofdev.prebuilt</li>
+ *     <li>{@code --threads <n>} number of classes transformed at once, all processors by default</li>
+ * </ul>
+ */
+public class OptifineDevDeobfuscator {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        if (options == null || !options.containsKey("optifine")) {
+            System.err.println("Usage: OptifineDevDeobfuscator --optifine <jar> [--minecraft <jar>] "
+                    + "[--notch-mcp <srg> | --srg-mcp <srg> --mc-version <version>] [--output <jar>] [--threads <n>]");
+            System.exit(2);
+            return;
+        }
+        // before anything reads them
+        setProperty("ofdev.mcjar", options.get("minecraft"));
+        setProperty("ofdev.mcVersion", options.get("mc-version"));
+        setProperty("net.minecraftforge.gradle.GradleStart.srg.notch-mcp", options.get("notch-mcp"));
+        setProperty("net.minecraftforge.gradle.GradleStart.srg.srg-mcp", options.get("srg-mcp"));
+        // the output must not depend on an older prebuilt jar
+        System.setProperty("ofdev.skipPrebuilt", "true");
+        System.setProperty("java.awt.headless", "true");
+
+        Path optifineJar = Paths.get(options.get("optifine")).toAbsolutePath();
+        Path output = options.containsKey("output") ? Paths.get(options.get("output")).toAbsolutePath()
+                : PrebuiltJar.defaultLocation().resolve(optifineJar.getFileName());
+        int threads = options.containsKey("threads") ? Integer.parseInt(options.get("threads")) : Runtime.getRuntime().availableProcessors();
+
+        long start = System.nanoTime();
+        initLaunchWrapper(optifineJar);
+        LOGGER.info("Set up OptiFine transformer in {} ms", (System.nanoTime() - start) / 1000000);
+
+        Map<String, TransformCache.Entry> classes = new ConcurrentHashMap<>();
+        Map<String, String> inputHashes = new ConcurrentHashMap<>();
+        try (ZipFile optifineZip = new ZipFile(optifineJar.toFile())) {
+            List<String> names = OptifineDevWarmup.findPatchedClasses(optifineZip);
+            LOGGER.info("Transforming {} OptiFine classes with {} threads", names.size(), threads);
+            OptifineDevTransformerWrapper transformer = new OptifineDevTransformerWrapper();
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                pool.submit(() -> names.parallelStream().forEach(name -> {
+                    try {
+                        byte[] basicClass = Launch.classLoader.getClassBytes(name);
+                        inputHashes.put(name, PrebuiltJar.inputHash(basicClass));
+                        if (basicClass == null) {
+                            LOGGER.warn("{} is not on classpath, it will be transformed at runtime if it's ever loaded", name);
+                            return;
+                        }
+                        classes.put(name, transformer.transformCached(name, name, basicClass));
+                    } catch (IOException e) {
+                        throw new RuntimeException("Could not transform " + name, e);
+                    }
+                })).get();
+            } catch (ExecutionException e) {
+                throw new IOException("Could not transform OptiFine classes", e.getCause());
+            } finally {
+                pool.shutdown();
+            }
+        }
+        LOGGER.info("Transformed {} classes in {} ms", classes.size(), (System.nanoTime() - start) / 1000000);
+
+        write(output, PrebuiltJar.inputs(optifineJar, OptifineDevTransformerWrapper.MC_JAR), inputHashes, classes);
+        LOGGER.info("Wrote {}", output);
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                System.err.println("Unexpected argument " + args[i]);
+                return null;
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static void setProperty(String key, String value) {
+        if (value != null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    // what Launch and the tweakers do before the first class is loaded, up to the point where OptiFine transformer exists
+    private static void initLaunchWrapper(Path optifineJar) throws ReflectiveOperationException, MalformedURLException {
+        List<URL> urls = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            urls.add(Paths.get(entry).toUri().toURL());
+        }
+        urls.add(optifineJar.toUri().toURL());
+        Launch.blackboard = new HashMap<>();
+        Launch.classLoader = new LaunchClassLoader(urls.toArray(new URL[0]));
+        // one copy of the tweaker classes, they are already loaded
+        Launch.classLoader.addClassLoaderExclusion("ofdev.");
+        Thread.currentThread().setContextClassLoader(Launch.classLoader);
+
+        // the constructor is changed to call OptifineDevTweakerWrapper.initOptiTransformer, which does the rest
+        OptifineDevTweakerWrapper.OF_TRANSFORMER_LAUNCH_CLASSLOADER.newInstance();
+        if (OptifineDevTransformerWrapper.ofTransformer == null) {
+            throw new IllegalStateException("OptiFine transformer was not initialized");
+        }
+    }
+
+    // sorted, with fixed times, so the same inputs give the same jar
+    private static void write(Path output, Attributes inputs, Map<String, String> inputHashes, Map<String, TransformCache.Entry> classes)
+            throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putAll(inputs);
+        Map<String, TransformCache.Entry> sorted = new TreeMap<>();
+        for (Map.Entry<String, String> input : new TreeMap<>(inputHashes).entrySet()) {
+            String entryName = input.getKey().replace('.', '/') + ".class";
+            TransformCache.Entry result = classes.get(input.getKey());
+            Attributes attributes = new Attributes();
+            attributes.put(PrebuiltJar.INPUT_HASH, input.getValue());
+            attributes.put(PrebuiltJar.FLAGS, String.valueOf(result == null ? 0 : result.flags()));
+            manifest.getEntries().put(entryName, attributes);
+            if (result != null) {
+                sorted.put(entryName, result);
+            }
+        }
+
+        Files.createDirectories(output.getParent());
+        Path tmp = Files.createTempFile(output.getParent(), output.getFileName().toString(), ".tmp");
+        try {
+            try (JarOutputStream jar = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                JarEntry manifestEntry = new JarEntry("META-INF/MANIFEST.MF");
+                manifestEntry.setTime(0);
+                jar.putNextEntry(manifestEntry);
+                manifest.write(jar);
+                jar.closeEntry();
+                for (Map.Entry<String, TransformCache.Entry> entry : sorted.entrySet()) {
+                    JarEntry jarEntry = new JarEntry(entry.getKey());
+                    jarEntry.setTime(0);
+                    jar.putNextEntry(jarEntry);
+                    jar.write(entry.getValue().data());
+                    jar.closeEntry();
+                }
+            }
+            try {
+                Files.move(tmp, output, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, output, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
@@ -5,6 +5,9 @@ import static ofdev.common.Utils.LOGGER;
 import LZMA.LzmaInputStream;
 import net.minecraft.launchwrapper.Launch;
 import net.minecraft.launchwrapper.LaunchClassLoader;
+import ofdev.common.Jfr;
+import ofdev.common.TransformCache;
+import ofdev.common.TransformMetrics;
 import ofdev.common.Utils;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.Type;
@@ -12,29 +15,49 @@ import org.objectweb.asm.commons.Remapper;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
-import java.nio.charset.StandardCharsets;
+import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
-// this class is a modified version of FMLDeobfuscatingRemapper
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * This class is a modified version of FMLDeobfuscatingRemapper.
+ * <p>
+ * Once constructed, everything except the setup and parse methods can be called from any number of threads at once. Mapping
+ * lookups don't lock. Filling the per class super map caches and adding field mappings of a visited class lock only
+ * a stripe picked by the class name, and are done under the lock of the class being updated only, never of its parents,
+ * so there is no lock ordering to get wrong.
+ * <p>
+ * Big mapping files are parsed in chunks on the common ForkJoin pool, and ForgeGradle 3 reads its two sources at the same time.
+ * <p>
+ * Mappings can be SRG, TSRG, TSRG2 or Tiny v2, see {@link MappingSource}. The {@code ofdev.mappings} property points at a notch-mcp
+ * file in any of them, and {@code ofdev.mappingsNamespaces} picks the "from,to" namespaces when the file has more than two.
+ */
 public class OptifineDevRemapper extends Remapper {
 
+    private static final boolean DISABLE_MAPPING_SNAPSHOT = Boolean.getBoolean("ofdev.skipMappingSnapshot");
+
     private static final MethodHandle getPatchedResource;
-    public static final OptifineDevRemapper NOTCH_MCP;
+    private static final Object patchedResourceLock = new Object();
+    private static final Object forgeLocation;
     static {
         try {
             Class<?> cpm;
@@ -49,255 +72,604 @@ public class OptifineDevRemapper extends Remapper {
 
             Method m = cpm.getMethod("getPatchedResource", String.class, String.class, LaunchClassLoader.class);
             getPatchedResource = MethodHandles.lookup().unreflect(m).bindTo(classPathManager);
+            URL forgeUrl = cpm.getProtectionDomain().getCodeSource().getLocation();
+            forgeLocation = forgeUrl.getProtocol().equals("file") ? Paths.get(forgeUrl.toURI()) : forgeUrl;
         } catch (Throwable t) {
             throw new RuntimeException("Unable to fine ClassPatchManager.getPatchedResource method", t);
         }
-        String notch2mcpProp = System.getProperty("net.minecraftforge.gradle.GradleStart.srg.notch-mcp");
-        if (notch2mcpProp != null) {
-            LOGGER.info("Found notch-mcp mappings file " + notch2mcpProp);
-            NOTCH_MCP = new OptifineDevRemapper(notch2mcpProp);
-        } else {
-            String srg2mcp = System.getProperty("net.minecraftforge.gradle.GradleStart.srg.srg-mcp");
-            if (srg2mcp == null)
-                throw new IllegalStateException("Current version of ForgeGradle is not supported! Please report us!");
-            LOGGER.info("Found srg-mcp mappings file " + srg2mcp);
-            NOTCH_MCP = new OptifineDevRemapper(Utils.mcVersion(), srg2mcp);
+    }
+
+    /**
+     * @return notch-mcp remapper for the mappings ForgeGradle gives to the game, loaded on first use
+     */
+    public static OptifineDevRemapper notchMcp() {
+        return Loaded.NOTCH_MCP;
+    }
+
+    // mappings are parsed on other threads, which would wait for OptifineDevRemapper to be initialized if they were loaded in its
+    // static initializer
+    private static final class Loaded {
+        static final OptifineDevRemapper NOTCH_MCP;
+        static {
+            // notch-mcp mappings in any format MappingSource reads, for toolchains that don't give the game SRG files
+            String mappings = System.getProperty("ofdev.mappings");
+            String notch2mcpProp = System.getProperty("net.minecraftforge.gradle.GradleStart.srg.notch-mcp");
+            if (mappings != null) {
+                LOGGER.info("Using mappings file " + mappings + " from ofdev.mappings");
+                NOTCH_MCP = new OptifineDevRemapper(mappings, System.getProperty("ofdev.mappingsNamespaces"), true);
+            } else if (notch2mcpProp != null) {
+                LOGGER.info("Found notch-mcp mappings file " + notch2mcpProp);
+                NOTCH_MCP = new OptifineDevRemapper(notch2mcpProp, null, true);
+            } else {
+                String srg2mcp = System.getProperty("net.minecraftforge.gradle.GradleStart.srg.srg-mcp");
+                if (srg2mcp == null)
+                    throw new IllegalStateException("Current version of ForgeGradle is not supported! Please report us!");
+                LOGGER.info("Found srg-mcp mappings file " + srg2mcp);
+                NOTCH_MCP = new OptifineDevRemapper(Utils.mcVersion(), srg2mcp);
+            }
         }
     }
 
     private Map<String, String> classNameMap, classNameMapInverse;
 
-    private Map<String, Map<String, String>> rawFieldMaps;
-    private Map<String, Map<String, String>> rawMethodMaps;
+    // member maps are keyed by symbols of the notch name and descriptor, and map to the symbol of MCP name
+    private SymbolTable symbols = new SymbolTable();
+
+    private Map<String, MemberMap> rawFieldMaps;
+    private Map<String, MemberMap> rawMethodMaps;
+    // when loaded from a snapshot, raw maps only have the classes that were looked up, the rest is read from here on first use
+    private MappingSnapshot.LazyMemberMaps snapshotMethodMaps;
+    private MappingSnapshot.LazyMemberMaps snapshotFieldMaps;
 
-    private Map<String, Map<String, String>> fieldNameMaps;
-    private Map<String, Map<String, String>> methodNameMaps;
+    private Map<String, MemberMap> fieldNameMaps;
+    private Map<String, MemberMap> methodNameMaps;
+
+    private final Object[] classLocks = new Object[64];
+    {
+        Arrays.setAll(classLocks, i -> new Object());
+    }
 
     private LaunchClassLoader classLoader;
 
-    private OptifineDevRemapper(String property) {
+    // everything the loaded mappings depend on, used to key persistent caches
+    private final List<Object> mappingInputs = new ArrayList<>();
+
+    // the flag only tells this apart from the ForgeGradle 3 constructor. Not private so that tests can make remappers of their own
+    OptifineDevRemapper(String mappingsFile, String namespaces, boolean notchMcp) {
         classNameMap = new HashMap<>();
         classNameMapInverse = new HashMap<>();
-        setup(Launch.classLoader, property);
+        mappingInputs.add(Paths.get(mappingsFile));
+        mappingInputs.add(forgeLocation);
+        if (namespaces != null) {
+            mappingInputs.add(namespaces);
+        }
+        Path snapshot = snapshotLocation(() -> Files.newInputStream(Paths.get(mappingsFile)));
+        if (!loadSnapshot(Launch.classLoader, snapshot)) {
+            setup(Launch.classLoader, mappingsFile, namespaces);
+            saveSnapshot(snapshot);
+        }
     }
 
     private OptifineDevRemapper(String minecraftVersion, String srg2mcp) {
         classNameMap = new HashMap<>();
         classNameMapInverse = new HashMap<>();
-        setupForFG3(Launch.classLoader, minecraftVersion, srg2mcp);
+        mappingInputs.add(minecraftVersion);
+        mappingInputs.add(Paths.get(srg2mcp));
+        mappingInputs.add(forgeLocation);
+        Path snapshot = snapshotLocation(
+                () -> Launch.class.getClassLoader().getResourceAsStream("deobfuscation_data-" + minecraftVersion + ".lzma"),
+                () -> Files.newInputStream(Paths.get(srg2mcp)));
+        if (!loadSnapshot(Launch.classLoader, snapshot)) {
+            setupForFG3(Launch.classLoader, minecraftVersion, srg2mcp);
+            saveSnapshot(snapshot);
+        }
+    }
+
+    public List<Object> mappingInputs() {
+        return Collections.unmodifiableList(mappingInputs);
+    }
+
+    // the snapshot is keyed by the content of mapping sources, and by Forge jar for the field types looked up while parsing
+    private Path snapshotLocation(MappingSourceStream... sources) {
+        if (DISABLE_MAPPING_SNAPSHOT) {
+            return null;
+        }
+        try {
+            List<Object> keyInputs = new ArrayList<>(mappingInputs);
+            for (MappingSourceStream source : sources) {
+                try (InputStream in = source.open()) {
+                    keyInputs.add(in == null ? null : TransformCache.contentHash(in));
+                }
+            }
+            return Utils.cacheDir().resolve("mappings").resolve(TransformCache.fingerprint("mappings", keyInputs) + ".bin");
+        } catch (IOException e) {
+            LOGGER.error("Could not hash mapping sources, mapping snapshot will not be used", e);
+            return null;
+        }
+    }
+
+    private boolean loadSnapshot(LaunchClassLoader classLoader, Path snapshotFile) {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            MappingSnapshot snapshot = MappingSnapshot.read(snapshotFile);
+            this.classLoader = classLoader;
+            classNameMap = snapshot.classNameMap;
+            classNameMapInverse = snapshot.classNameMapInverse;
+            symbols = snapshot.symbols;
+            rawMethodMaps = new ConcurrentHashMap<>();
+            rawFieldMaps = new ConcurrentHashMap<>();
+            snapshotMethodMaps = snapshot.methodMaps;
+            snapshotFieldMaps = snapshot.fieldMaps;
+            initCaches();
+            LOGGER.info("Loaded mapping snapshot {} in {} ms, members of {} classes are read when first needed", snapshotFile,
+                    (System.nanoTime() - start) / 1000000, snapshotMethodMaps.classes());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not read mapping snapshot " + snapshotFile + ", loading mappings from source", e);
+            return false;
+        }
+    }
+
+    private void saveSnapshot(Path snapshotFile) {
+        if (snapshotFile == null || rawMethodMaps == null || rawFieldMaps == null || classNameMap.isEmpty()) {
+            return;
+        }
+        try {
+            new MappingSnapshot(classNameMap, classNameMapInverse, symbols, rawMethodMaps, rawFieldMaps).write(snapshotFile);
+            LOGGER.info("Saved mapping snapshot {}", snapshotFile);
+        } catch (IOException e) {
+            LOGGER.error("Could not write mapping snapshot " + snapshotFile, e);
+        }
+    }
+
+    private interface MappingSourceStream {
+        InputStream open() throws IOException;
     }
 
     public void setup(LaunchClassLoader classLoader, String gradleStartProp) {
+        setup(classLoader, gradleStartProp, null);
+    }
+
+    /**
+     * @param namespaces "from,to" names of the namespaces to map between, for mapping formats that name them. Null, or an empty
+     * name, for the first and the last one
+     */
+    public void setup(LaunchClassLoader classLoader, String mappingsFile, String namespaces) {
+        Object event = Jfr.beginMappingLoad();
         this.classLoader = classLoader;
         try {
-            List<String> srgList;
-
-            srgList = Files.readAllLines(Paths.get(gradleStartProp), StandardCharsets.UTF_8);
-            rawMethodMaps = new HashMap<>();
-            rawFieldMaps = new HashMap<>();
-            Map<String, String> classMap = new HashMap<>();
-            Map<String, String> classMapInverse = new HashMap<>();
-            parseSrg(srgList, rawMethodMaps, rawFieldMaps, classMap, classMapInverse, true);
-            classNameMap = classMap;
-            classNameMapInverse = classMapInverse;
+            String[] fromTo = namespaces == null ? new String[0] : namespaces.split(",", -1);
+            String from = fromTo.length > 0 && !fromTo[0].isEmpty() ? fromTo[0] : null;
+            String to = fromTo.length > 1 && !fromTo[1].isEmpty() ? fromTo[1] : null;
+            SrgTables tables = new SrgTables(symbols);
+            parse(MappingSource.map(Paths.get(mappingsFile)), from, to, tables, null, this);
+            rawMethodMaps = tables.methods;
+            rawFieldMaps = tables.fields;
+            classNameMap = tables.classes;
+            classNameMapInverse = tables.classesInverse;
         } catch (IOException ioe) {
             ioe.printStackTrace();
         }
-        methodNameMaps = new HashMap<>();
-        fieldNameMaps = new HashMap<>();
+        initCaches();
+        Jfr.endMappingLoad(event, "setup", mappingsFile, classNameMap.size());
     }
 
-    private static List<String> readLines(InputStream is) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-            List<String> result = new ArrayList<>();
-            for (;;) {
-                String line = reader.readLine();
-                if (line == null)
-                    break;
-                result.add(line);
-            }
-            return result;
+    // everything that can still change after loading must be safe to use from multiple threads
+    private void initCaches() {
+        if (rawFieldMaps != null) {
+            rawFieldMaps = new ConcurrentHashMap<>(rawFieldMaps);
+        }
+        methodNameMaps = new ConcurrentHashMap<>();
+        fieldNameMaps = new ConcurrentHashMap<>();
+    }
+
+    private MemberMap rawMethodMap(String className) {
+        return rawMap(rawMethodMaps, snapshotMethodMaps, className);
+    }
+
+    private MemberMap rawFieldMap(String className) {
+        return rawMap(rawFieldMaps, snapshotFieldMaps, className);
+    }
+
+    private static MemberMap rawMap(Map<String, MemberMap> maps, MappingSnapshot.LazyMemberMaps snapshotMaps, String className) {
+        MemberMap map = maps.get(className);
+        if (map != null || snapshotMaps == null) {
+            return map;
+        }
+        map = snapshotMaps.read(className);
+        if (map == null) {
+            return null;
         }
+        // another thread may have read it, or already added a field to it
+        MemberMap existing = maps.putIfAbsent(className, map);
+        return existing == null ? map : existing;
+    }
+
+    private Object classLock(String className) {
+        return classLocks[MemberMap.mix(className.hashCode()) & (classLocks.length - 1)];
     }
 
     // setup for ForgeGradle 3.x or later
     public void setupForFG3(LaunchClassLoader classLoader, String minecraftVersion, String srg2mcp) {
+        Object event = Jfr.beginMappingLoad();
         this.classLoader = classLoader;
         try {
+            // srg-mcp is loaded while notch-srg is decompressed, after the join below only its names are kept for SrgMappings
+            ForkJoinTask<SrgTables> srg2mcpTask = ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    return readSrgMcp(srg2mcp);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
             LOGGER.info("Loading Notch2Srg data from forge jar!");
             // deobfuscation_data contains notch2srg mapping
             String dataName = "deobfuscation_data-" + minecraftVersion + ".lzma";
-            List<String> notch2srgLines = readLines(new LzmaInputStream(
-                    Launch.class.getClassLoader().getResourceAsStream(dataName)));
-            LOGGER.info("Found " + notch2srgLines.size() + " lines of notch2srg data!");
-
-            Map<String, Map<String, String>> notch2srgMethodMaps = new HashMap<>();
-            Map<String, Map<String, String>> notch2srgFieldMaps = new HashMap<>();
-            Map<String, String> notch2srgClassMap = new HashMap<>();
-            Map<String, String> notch2srgClassMapInverse = new HashMap<>();
-            parseSrg(notch2srgLines, notch2srgMethodMaps, notch2srgFieldMaps, notch2srgClassMap, notch2srgClassMapInverse, true);
-
-            List<String> srg2mcpLines = Files.readAllLines(Paths.get(srg2mcp), StandardCharsets.UTF_8);
-            Map<String, Map<String, String>> srg2mcpMethodMaps = new HashMap<>();
-            Map<String, Map<String, String>> srg2mcpFieldMaps = new HashMap<>();
-            Map<String, String> srg2mcpClassMap = new HashMap<>();
-            Map<String, String> srg2mcpClassMapInverse = new HashMap<>();
-            parseSrg(srg2mcpLines, srg2mcpMethodMaps, srg2mcpFieldMaps, srg2mcpClassMap, srg2mcpClassMapInverse, false);
-
-            rawMethodMaps = joinMaps(notch2srgMethodMaps, srg2mcpMethodMaps, notch2srgClassMap);
-            rawFieldMaps = joinMaps(notch2srgFieldMaps, srg2mcpFieldMaps, notch2srgClassMap);
-            classNameMap = joinMap(notch2srgClassMap, srg2mcpClassMap);
-            classNameMapInverse = joinMap(srg2mcpClassMapInverse, notch2srgClassMapInverse);
-        } catch (IOException ioe) {
+            ByteBuffer notch2srg;
+            try (InputStream in = new LzmaInputStream(Launch.class.getClassLoader().getResourceAsStream(dataName))) {
+                notch2srg = MappingSource.read(in);
+            }
+            LOGGER.info("Found " + notch2srg.limit() + " bytes of notch2srg data!");
+
+            // notch-srg records are joined with srg-mcp as they are read, straight into the final tables
+            SrgTables notch2mcp = new SrgTables(symbols);
+            SrgTables srgMcp = srg2mcpTask.join();
+            parse(notch2srg, null, null, notch2mcp, srgMcp, this);
+            if (srg2mcp.equals(SrgMappings.location)) {
+                synchronized (SrgNames.class) {
+                    if (srgNames == null) {
+                        srgNames = new SrgNames(srg2mcp, srgMcp);
+                    }
+                }
+            }
+            rawMethodMaps = notch2mcp.methods;
+            rawFieldMaps = notch2mcp.fields;
+            classNameMap = notch2mcp.classes;
+            classNameMapInverse = notch2mcp.classesInverse;
+        } catch (IOException | UncheckedIOException ioe) {
             ioe.printStackTrace();
         }
-        methodNameMaps = new HashMap<>();
-        fieldNameMaps = new HashMap<>();
-    }
-
-    private Map<String, Map<String, String>> joinMaps(
-            Map<String, Map<String, String>> first,
-            Map<String, Map<String, String>> second,
-            Map<String, String> classNameMap
-    ) {
-        Map<String, Map<String, String>> result = new HashMap<>();
-        for (Map.Entry<String, Map<String, String>> classToMapEntry : first.entrySet()) {
-            String firstClass = classToMapEntry.getKey();
-            String secondClass = classNameMap.get(firstClass);
-            if (secondClass == null) continue;
-            Map<String, String> secondMap = second.get(secondClass);
-            if (secondMap == null) continue;
-            Map<String, String> resultMap = new HashMap<>();
-            result.put(firstClass, resultMap);
-            for (Map.Entry<String, String> entry : classToMapEntry.getValue().entrySet()) {
-                String firstKey = entry.getKey();
-                String secondNewName = secondMap.get(entry.getValue());
-                if (secondNewName == null) continue;
-                resultMap.put(firstKey, secondNewName);
+        initCaches();
+        Jfr.endMappingLoad(event, "setupForFG3", srg2mcp, classNameMap.size());
+    }
+
+    // srg-mcp member maps are keyed by srg name without descriptor, in symbols of their own
+    private static SrgTables readSrgMcp(String file) throws IOException {
+        SrgTables tables = new SrgTables(new SymbolTable());
+        parse(MappingSource.map(Paths.get(file)), null, null, tables, null, null);
+        return tables;
+    }
+
+    /**
+     * srg to mcp names of all methods and fields, for the few constants {@link SrgMappings} looks up. Made from the tables ForgeGradle 3
+     * setup joins with, or read on the first lookup, either way only the names are kept and not the per class tables.
+     */
+    private static final class SrgNames {
+        final String file;
+        final SymbolTable symbols;
+        // srg names are unique, so members of all classes fit in one map, for lookups without knowing the owner
+        final MemberMap members = new MemberMap();
+
+        SrgNames(String file, SrgTables tables) {
+            this.file = file;
+            symbols = tables.symbols;
+            for (Map<String, MemberMap> maps : Arrays.asList(tables.methods, tables.fields)) {
+                for (MemberMap classMembers : maps.values()) {
+                    members.putAll(classMembers);
+                }
             }
         }
-        return result;
     }
 
-    private Map<String, String> joinMap(Map<String, String> first, Map<String, String> second) {
-        Map<String, String> result = new HashMap<>();
-        for (Map.Entry<String, String> entry : first.entrySet()) {
-            String value = second.get(entry.getValue());
-            if (value == null) continue;
-            result.put(entry.getKey(), value);
+    private static volatile SrgNames srgNames;
+
+    /**
+     * @return mcp name of a srg method or field name from the srg-mcp file, or the name itself if there is none
+     */
+    static String srgToMcp(String srgMcpFile, String srgName) throws IOException {
+        if (srgMcpFile == null) {
+            return srgName;
+        }
+        SrgNames loaded = srgNames;
+        if (loaded == null || !loaded.file.equals(srgMcpFile)) {
+            synchronized (SrgNames.class) {
+                if (srgNames == null || !srgNames.file.equals(srgMcpFile)) {
+                    srgNames = new SrgNames(srgMcpFile, readSrgMcp(srgMcpFile));
+                }
+                loaded = srgNames;
+            }
         }
-        return result;
+        int name = loaded.symbols.id(srgName);
+        int mcpName = name < 0 ? -1 : loaded.members.get(MemberMap.key(name, MemberMap.NO_DESC));
+        return mcpName < 0 ? srgName : loaded.symbols.name(mcpName);
     }
 
-    // not static for parseField
-    public void parseSrg(
-            List<String> srgList,
-            Map<String, Map<String, String>> rawMethodMaps, 
-            Map<String, Map<String, String>> rawFieldMaps,
+    // big enough that parsing a chunk takes much longer than handing it to another thread
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    public void parseMappings(
+            ByteBuffer mappings,
+            SymbolTable symbols,
+            Map<String, MemberMap> rawMethodMaps,
+            Map<String, MemberMap> rawFieldMaps,
             Map<String, String> classMap,
             Map<String, String> classMapInverse,
             boolean withSignatureKey
-    ) {
-        for (String line : srgList) {
-            String[] parts = line.split("[:\\s]+");
-            for (int i = 0; i < parts.length; i++) {
-                parts[i] = parts[i].trim();
+    ) throws IOException {
+        parse(mappings, null, null, new SrgTables(symbols, new SymbolTable(), rawMethodMaps, rawFieldMaps, classMap, classMapInverse), null,
+                withSignatureKey ? this : null);
+    }
+
+    /**
+     * Parses mappings in any format {@link MappingSource} knows into the tables. With srgMcp, the mappings are notch-srg and are
+     * joined with it on the fly, so the tables get notch-mcp entries. Members srg-mcp has no name for are left out.
+     *
+     * @param fieldTypes remapper to look the types of fields up with, to key members by descriptor. Null for keys without them
+     */
+    private static void parse(ByteBuffer mappings, String from, String to, SrgTables tables, SrgTables srgMcp, OptifineDevRemapper fieldTypes)
+            throws IOException {
+        Object event = Jfr.beginMappingLoad();
+        List<MappingSource> chunks = MappingSource.open(mappings, from, to, CHUNK_BYTES);
+        if (chunks.size() <= 1) {
+            for (MappingSource chunk : chunks) {
+                parseChunk(chunk, tables, srgMcp, fieldTypes);
+            }
+        } else {
+            // line aligned chunks are parsed in parallel into maps of their own, and merged in order so that later lines still win.
+            // Symbols are shared, so maps of classes that are all in one chunk are taken over as they are
+            List<ForkJoinTask<SrgTables>> tasks = new ArrayList<>();
+            for (MappingSource chunk : chunks) {
+                tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                    SrgTables chunkTables = new SrgTables(tables.symbols, tables.classNames);
+                    parseChunk(chunk, chunkTables, srgMcp, fieldTypes);
+                    return chunkTables;
+                }));
+            }
+            for (ForkJoinTask<SrgTables> task : tasks) {
+                tables.merge(task.join());
+            }
+        }
+        Jfr.endMappingLoad(event, "parseMappings", null, tables.classes.size());
+    }
+
+    private static void parseChunk(MappingSource source, SrgTables tables, SrgTables srgMcp, OptifineDevRemapper fieldTypes) {
+        while (source.next()) {
+            switch (source.kind) {
+                case CLASS:
+                    parseClass(source, tables, srgMcp);
+                    break;
+                case METHOD:
+                    parseMethod(source, tables, srgMcp, fieldTypes != null);
+                    break;
+                case FIELD:
+                    parseField(source, tables, srgMcp, fieldTypes);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Tables parsed from one mapping source or a chunk of it. Member maps use ids of {@link #symbols}.
+     */
+    private static final class SrgTables {
+        final SymbolTable symbols;
+        // makes the same string of every occurrence of a class name
+        final SymbolTable classNames;
+        final Map<String, MemberMap> methods;
+        final Map<String, MemberMap> fields;
+        final Map<String, String> classes;
+        final Map<String, String> classesInverse;
+
+        SrgTables(SymbolTable symbols) {
+            this(symbols, new SymbolTable());
+        }
+
+        SrgTables(SymbolTable symbols, SymbolTable classNames) {
+            this(symbols, classNames, new HashMap<>(), new HashMap<>(), new HashMap<>(), new HashMap<>());
+        }
+
+        SrgTables(SymbolTable symbols, SymbolTable classNames, Map<String, MemberMap> methods, Map<String, MemberMap> fields,
+                Map<String, String> classes, Map<String, String> classesInverse) {
+            this.symbols = symbols;
+            this.classNames = classNames;
+            this.methods = methods;
+            this.fields = fields;
+            this.classes = classes;
+            this.classesInverse = classesInverse;
+        }
+
+        String className(ByteBuffer buf, int from, int to) {
+            return classNames.name(classNames.intern(buf, from, to));
+        }
+
+        // null if no record had this class name
+        String knownClassName(ByteBuffer buf, int from, int to) {
+            int id = classNames.id(buf, from, to);
+            return id < 0 ? null : classNames.name(id);
+        }
+
+        // members of the class between from and to, null if it has none
+        MemberMap members(Map<String, MemberMap> maps, ByteBuffer buf, int from, int to) {
+            String className = knownClassName(buf, from, to);
+            return className == null ? null : maps.get(className);
+        }
+
+        // symbol of the new name of the member named between from and to, -1 if it has none
+        int newName(MemberMap members, ByteBuffer buf, int from, int to) {
+            int name = symbols.id(buf, from, to);
+            return name < 0 ? -1 : members.get(MemberMap.key(name, MemberMap.NO_DESC));
+        }
+
+        void merge(SrgTables chunk) {
+            classes.putAll(chunk.classes);
+            classesInverse.putAll(chunk.classesInverse);
+            mergeMembers(chunk.methods, methods);
+            mergeMembers(chunk.fields, fields);
+        }
+
+        private static void mergeMembers(Map<String, MemberMap> from, Map<String, MemberMap> to) {
+            for (Map.Entry<String, MemberMap> entry : from.entrySet()) {
+                MemberMap existing = to.putIfAbsent(entry.getKey(), entry.getValue());
+                if (existing != null) {
+                    existing.putAll(entry.getValue());
+                }
             }
-            String typ = parts[0];
-            if ("CL".equals(typ)) {
-                parseClass(classMap, classMapInverse, parts);
-            } else if ("MD".equals(typ)) {
-                parseMethod(parts, rawMethodMaps, withSignatureKey);
-            } else if ("FD".equals(typ)) {
-                parseField(parts, rawFieldMaps, withSignatureKey);
+        }
+    }
+
+    private static void parseClass(MappingSource record, SrgTables tables, SrgTables srgMcp) {
+        ByteBuffer buf = record.buf;
+        String newName;
+        if (srgMcp == null) {
+            newName = tables.className(buf, record.newOwnerStart, record.newOwnerEnd);
+        } else {
+            String srgName = srgMcp.knownClassName(buf, record.newOwnerStart, record.newOwnerEnd);
+            newName = srgName == null ? null : srgMcp.classes.get(srgName);
+            if (newName == null) {
+                return;
             }
         }
+        String oldName = tables.className(buf, record.ownerStart, record.ownerEnd);
+        tables.classes.put(oldName, newName);
+        tables.classesInverse.put(newName, oldName);
     }
 
-    // not static for getFieldType
-    private void parseField(String[] parts, Map<String, Map<String, String>> rawFieldMaps, boolean withSignatureKey) {
-        String oldSrg = parts[1];
-        int lastOld = oldSrg.lastIndexOf('/');
-        String cl = oldSrg.substring(0, lastOld);
-        String oldName = oldSrg.substring(lastOld + 1);
-        String newSrg = parts[2];
-        int lastNew = newSrg.lastIndexOf('/');
-        String newName = newSrg.substring(lastNew + 1);
-        if (!rawFieldMaps.containsKey(cl)) {
-            rawFieldMaps.put(cl, new HashMap<>());
-        }
-        if (withSignatureKey) {
-            String fieldType = getFieldType(cl, oldName);
-            // We might be in mcp named land, where in fact the name is "new"
-            if (fieldType == null) {
-                fieldType = getFieldType(cl, newName);
+    private static void parseMethod(MappingSource record, SrgTables tables, SrgTables srgMcp, boolean withSignatureKey) {
+        ByteBuffer buf = record.buf;
+        MemberMap srgMethods = null;
+        if (srgMcp != null) {
+            srgMethods = srgMcp.members(srgMcp.methods, buf, record.newOwnerStart, record.newOwnerEnd);
+            if (srgMethods == null) {
+                return;
+            }
+        }
+        String cl = tables.className(buf, record.ownerStart, record.ownerEnd);
+        // a class that has srg-mcp members gets a map even if none of them are joined, same as for notch-mcp files
+        MemberMap methodMap = tables.methods.computeIfAbsent(cl, k -> new MemberMap());
+        int newName;
+        if (srgMcp == null) {
+            newName = tables.symbols.intern(buf, record.newNameStart, record.newNameEnd);
+        } else {
+            int mcpName = srgMcp.newName(srgMethods, buf, record.newNameStart, record.newNameEnd);
+            if (mcpName < 0) {
+                return;
             }
-            rawFieldMaps.get(cl).put(oldName + ":" + fieldType, newName);
-            rawFieldMaps.get(cl).put(oldName + ":null", newName);
+            newName = tables.symbols.intern(srgMcp.symbols.name(mcpName));
+        }
+        // formats without descriptors in the old namespace only have entries that match any descriptor
+        int desc = withSignatureKey && record.descStart >= 0 ? tables.symbols.intern(buf, record.descStart, record.descEnd) : MemberMap.NO_DESC;
+        methodMap.put(MemberMap.key(tables.symbols.intern(buf, record.nameStart, record.nameEnd), desc), newName);
+    }
+
+    private static void parseField(MappingSource record, SrgTables tables, SrgTables srgMcp, OptifineDevRemapper fieldTypes) {
+        ByteBuffer buf = record.buf;
+        MemberMap srgFields = null;
+        if (srgMcp != null) {
+            srgFields = srgMcp.members(srgMcp.fields, buf, record.newOwnerStart, record.newOwnerEnd);
+            if (srgFields == null) {
+                return;
+            }
+        }
+        String cl = tables.className(buf, record.ownerStart, record.ownerEnd);
+        MemberMap fieldMap = tables.fields.computeIfAbsent(cl, k -> new MemberMap());
+        int newId;
+        // name on the right side of the record, the srg name when joining
+        String newName;
+        if (srgMcp == null) {
+            newId = tables.symbols.intern(buf, record.newNameStart, record.newNameEnd);
+            newName = tables.symbols.name(newId);
         } else {
-            rawFieldMaps.get(cl).put(oldName, newName);
+            int srgName = srgMcp.symbols.id(buf, record.newNameStart, record.newNameEnd);
+            int mcpName = srgName < 0 ? -1 : srgFields.get(MemberMap.key(srgName, MemberMap.NO_DESC));
+            if (mcpName < 0) {
+                return;
+            }
+            newId = tables.symbols.intern(srgMcp.symbols.name(mcpName));
+            newName = srgMcp.symbols.name(srgName);
+        }
+        int oldId = tables.symbols.intern(buf, record.nameStart, record.nameEnd);
+        if (fieldTypes != null) {
+            if (record.descStart >= 0) {
+                // TSRG2, Tiny and XSRG have the descriptor in the record, no need to read the class
+                fieldMap.put(MemberMap.key(oldId, tables.symbols.intern(buf, record.descStart, record.descEnd)), newId);
+            } else {
+                String oldName = tables.symbols.name(oldId);
+                String fieldType = fieldTypes.getFieldType(cl, oldName);
+                // We might be in mcp named land, where in fact the name is "new"
+                if (fieldType == null) {
+                    fieldType = fieldTypes.getFieldType(cl, newName);
+                }
+                if (fieldType != null) {
+                    fieldMap.put(MemberMap.key(oldId, tables.symbols.intern(fieldType)), newId);
+                }
+            }
         }
+        fieldMap.put(MemberMap.key(oldId, MemberMap.NO_DESC), newId);
     }
 
     /*
      * Cache the field descriptions for classes so we don't repeatedly reload the same data again and again
      */
-    private final Map<String, Map<String, String>> fieldDescriptions = new HashMap<>();
+    private final Map<String, Map<String, String>> fieldDescriptions = new ConcurrentHashMap<>();
 
     // Cache null values so we don't waste time trying to recompute classes with no field or method maps
-    private final Set<String> negativeCacheMethods = new HashSet<>();
-    private final Set<String> negativeCacheFields = new HashSet<>();
+    private final Set<String> negativeCacheMethods = ConcurrentHashMap.newKeySet();
+    private final Set<String> negativeCacheFields = ConcurrentHashMap.newKeySet();
 
     private String getFieldType(String owner, String name) {
-        if (fieldDescriptions.containsKey(owner)) {
-            return fieldDescriptions.get(owner).get(name);
-        }
-        synchronized (fieldDescriptions) {
-            try {
-                byte[] classBytes = (byte[]) getPatchedResource.invoke(owner, map(owner).replace('/', '.'), classLoader);
-                if (classBytes == null) {
-                    return null;
-                }
-                ClassReader cr = new ClassReader(classBytes);
-                ClassNode classNode = new ClassNode();
-                cr.accept(classNode, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                Map<String, String> resMap = new HashMap<>();
-                for (FieldNode fieldNode : classNode.fields) {
-                    resMap.put(fieldNode.name, fieldNode.desc);
-                }
-                fieldDescriptions.put(owner, resMap);
-                return resMap.get(name);
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (Throwable e) {
-                throw new RuntimeException(e);
+        Map<String, String> descriptions = fieldDescriptions.get(owner);
+        if (descriptions == null) {
+            descriptions = readFieldDescriptions(owner);
+            if (descriptions == null) {
+                return null;
+            }
+            // if another thread was faster, the result is the same
+            Map<String, String> existing = fieldDescriptions.putIfAbsent(owner, descriptions);
+            if (existing != null) {
+                descriptions = existing;
             }
-            return null;
         }
+        return descriptions.get(name);
     }
 
-    private static void parseClass(Map<String, String> classMap, Map<String, String> classMapInverse, String[] parts) {
-        classMap.put(parts[1], parts[2]);
-        classMapInverse.put(parts[2], parts[1]);
+    private byte[] patchedResource(String name, String transformedName) throws Throwable {
+        byte[] classBytes;
+        // Forge doesn't say ClassPatchManager can be used from several threads, warmup and parallel parsing would do that
+        synchronized (patchedResourceLock) {
+            long start = System.nanoTime();
+            classBytes = (byte[]) getPatchedResource.invoke(name, transformedName, classLoader);
+            TransformMetrics.add(TransformMetrics.Counter.PATCHED_RESOURCE_NANOS, System.nanoTime() - start);
+        }
+        TransformMetrics.count(TransformMetrics.Counter.PATCHED_RESOURCE_CALLS);
+        if (classBytes == null) {
+            TransformMetrics.count(TransformMetrics.Counter.PATCHED_RESOURCE_NOT_FOUND);
+        }
+        return classBytes;
     }
 
-    private static void parseMethod(String[] parts, Map<String, Map<String, String>> rawMethodMaps, boolean withSignatureKey) {
-        String oldSrg = parts[1];
-        int lastOld = oldSrg.lastIndexOf('/');
-        String cl = oldSrg.substring(0, lastOld);
-        String oldName = oldSrg.substring(lastOld + 1);
-        String sig = parts[2];
-        String newSrg = parts[3];
-        int lastNew = newSrg.lastIndexOf('/');
-        String newName = newSrg.substring(lastNew + 1);
-        if (!rawMethodMaps.containsKey(cl)) {
-            rawMethodMaps.put(cl, new HashMap<>());
-        }
-        if (withSignatureKey) {
-            rawMethodMaps.get(cl).put(oldName + sig, newName);
-        } else {
-            rawMethodMaps.get(cl).put(oldName, newName);
+    private Map<String, String> readFieldDescriptions(String owner) {
+        try {
+            byte[] classBytes = patchedResource(owner, map(owner).replace('/', '.'));
+            if (classBytes == null) {
+                return null;
+            }
+            ClassReader cr = new ClassReader(classBytes);
+            ClassNode classNode = new ClassNode();
+            cr.accept(classNode, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            Map<String, String> resMap = new ConcurrentHashMap<>();
+            for (FieldNode fieldNode : classNode.fields) {
+                resMap.put(fieldNode.name, fieldNode.desc);
+            }
+            return resMap;
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
         }
+        return null;
     }
 
     String mapMemberFieldName(String owner, String name, String desc) {
@@ -307,18 +679,30 @@ public class OptifineDevRemapper extends Remapper {
     }
 
     private void storeMemberFieldMapping(String owner, String name, String desc, String remappedName) {
-        Map<String, String> fieldMap = getRawFieldMap(owner);
-
-        String key = name + ":" + desc;
-        String altKey = name + ":null";
-
-        if (!fieldMap.containsKey(key)) {
-            fieldMap.put(key, remappedName);
-            fieldMap.put(altKey, remappedName);
-
-            // Alternatively, maps could be made mutable and we could just set the relevant entry, saving
-            // the need to regenerate the super map each time
-            fieldNameMaps.remove(owner);
+        int nameId = symbols.intern(name);
+        long key = MemberMap.key(nameId, symbols.intern(desc));
+        long altKey = MemberMap.key(nameId, MemberMap.NO_DESC);
+
+        synchronized (classLock(owner)) {
+            MemberMap fieldMap = rawFieldMap(owner);
+            if (fieldMap == null || !fieldMap.containsKey(key)) {
+                int remappedId = symbols.intern(remappedName);
+                if (fieldMap == null) {
+                    // a class the snapshot has no members for only ever gets a map here, under the lock
+                    fieldMap = new MemberMap();
+                    rawFieldMaps.put(owner, fieldMap);
+                }
+                // readers don't lock, MemberMap publishes the entries safely
+                fieldMap.put(key, remappedId);
+                fieldMap.put(altKey, remappedId);
+                // raw entries of a class override everything in its super map, so the entry can be set there directly
+                // instead of regenerating the super map
+                MemberMap superMap = fieldNameMaps.get(owner);
+                if (superMap != null) {
+                    superMap.put(key, remappedId);
+                    superMap.put(altKey, remappedId);
+                }
+            }
         }
     }
 
@@ -332,11 +716,18 @@ public class OptifineDevRemapper extends Remapper {
             return name;
         }
 
-        Map<String, String> fieldMap = getFieldMap(owner, raw);
-        String ret = fieldMap != null && fieldMap.containsKey(name + ":" + desc) ? fieldMap.get(name + ":" + desc) :
-                fieldMap != null && fieldMap.containsKey(name + ":null") ? fieldMap.get(name + ":null") : name;
-        //System.out.println("Mapping field " + owner + "." + name + "(" + desc + ") raw=" + raw + " ---> " + ret);
-        return ret;
+        MemberMap fieldMap = getFieldMap(owner, raw);
+        // names that aren't in the symbol table can't have a mapping
+        int nameId = fieldMap == null ? -1 : symbols.id(name);
+        if (nameId < 0) {
+            return name;
+        }
+        int descId = desc == null ? -1 : symbols.id(desc);
+        int newName = descId < 0 ? -1 : fieldMap.get(MemberMap.key(nameId, descId));
+        if (newName < 0) {
+            newName = fieldMap.get(MemberMap.key(nameId, MemberMap.NO_DESC));
+        }
+        return newName < 0 ? name : symbols.name(newName);
     }
 
     @Override
@@ -407,9 +798,15 @@ public class OptifineDevRemapper extends Remapper {
             return name;
         }
         //System.out.println("Mapping method " + owner + "." + name + "(" + desc + ")");
-        Map<String, String> methodMap = getMethodMap(owner);
-        String methodDescriptor = name + desc;
-        return methodMap != null && methodMap.containsKey(methodDescriptor) ? methodMap.get(methodDescriptor) : name;
+        MemberMap methodMap = getMethodMap(owner);
+        int nameId = methodMap == null ? -1 : symbols.id(name);
+        int descId = nameId < 0 ? -1 : symbols.id(desc);
+        int newName = descId < 0 ? -1 : methodMap.get(MemberMap.key(nameId, descId));
+        // mappings without descriptors in the notch namespace
+        if (newName < 0 && nameId >= 0) {
+            newName = methodMap.get(MemberMap.key(nameId, MemberMap.NO_DESC));
+        }
+        return newName < 0 ? name : symbols.name(newName);
     }
 
     @Override
@@ -421,36 +818,44 @@ public class OptifineDevRemapper extends Remapper {
         return super.mapSignature(signature, typeSignature);
     }
 
-    private Map<String, String> getRawFieldMap(String className) {
-        if (!rawFieldMaps.containsKey(className)) {
-            rawFieldMaps.put(className, new HashMap<>());
-        }
-        return rawFieldMaps.get(className);
-    }
-
-    private Map<String, String> getFieldMap(String className, boolean raw) {
+    private MemberMap getFieldMap(String className, boolean raw) {
         if (raw) {
-            return getRawFieldMap(className);
+            return rawFieldMap(className);
         }
 
-        if (!fieldNameMaps.containsKey(className) && !negativeCacheFields.contains(className)) {
-            findAndMergeSuperMaps(unmap(className));
-            findAndMergeSuperMaps(map(className));
-            if (!fieldNameMaps.containsKey(className)) {
-                negativeCacheFields.add(className);
-            }
+        MemberMap map = fieldNameMaps.get(className);
+        if (map != null) {
+            TransformMetrics.count(TransformMetrics.Counter.FIELD_MAP_HIT);
+            return map;
+        }
+        if (negativeCacheFields.contains(className)) {
+            TransformMetrics.count(TransformMetrics.Counter.NEGATIVE_CACHE_HIT);
+            return null;
+        }
+        TransformMetrics.count(TransformMetrics.Counter.FIELD_MAP_MISS);
+        findAndMergeSuperMaps(unmap(className));
+        findAndMergeSuperMaps(map(className));
+        if (!fieldNameMaps.containsKey(className)) {
+            negativeCacheFields.add(className);
         }
         return fieldNameMaps.get(className);
     }
 
-    private Map<String, String> getMethodMap(String className) {
-        if (!methodNameMaps.containsKey(className) && !negativeCacheMethods.contains(className)) {
-            findAndMergeSuperMaps(unmap(className));
-            findAndMergeSuperMaps(map(className));
-            if (!methodNameMaps.containsKey(className)) {
-                negativeCacheMethods.add(className);
-            }
-
+    private MemberMap getMethodMap(String className) {
+        MemberMap map = methodNameMaps.get(className);
+        if (map != null) {
+            TransformMetrics.count(TransformMetrics.Counter.METHOD_MAP_HIT);
+            return map;
+        }
+        if (negativeCacheMethods.contains(className)) {
+            TransformMetrics.count(TransformMetrics.Counter.NEGATIVE_CACHE_HIT);
+            return null;
+        }
+        TransformMetrics.count(TransformMetrics.Counter.METHOD_MAP_MISS);
+        findAndMergeSuperMaps(unmap(className));
+        findAndMergeSuperMaps(map(className));
+        if (!methodNameMaps.containsKey(className)) {
+            negativeCacheMethods.add(className);
         }
         return methodNameMaps.get(className);
     }
@@ -459,15 +864,15 @@ public class OptifineDevRemapper extends Remapper {
         try {
             String superName = null;
             String[] interfaces = new String[0];
-            byte[] classBytes = (byte[]) getPatchedResource.invoke(name, map(name), classLoader);
+            byte[] classBytes = patchedResource(name, map(name));
             if (classBytes != null) {
                 ClassReader cr = new ClassReader(classBytes);
                 superName = cr.getSuperName();
                 interfaces = cr.getInterfaces();
             }
-            String notchName = OptifineDevRemapper.NOTCH_MCP.notchFromMcpOrDefault(name);
-            String notchSuperName = OptifineDevRemapper.NOTCH_MCP.notchFromMcpOrDefault(superName);
-            String[] notchInterfaces = Arrays.stream(interfaces).map(OptifineDevRemapper.NOTCH_MCP::notchFromMcpOrDefault).toArray(String[]::new);
+            String notchName = notchMcp().notchFromMcpOrDefault(name);
+            String notchSuperName = notchMcp().notchFromMcpOrDefault(superName);
+            String[] notchInterfaces = Arrays.stream(interfaces).map(notchMcp()::notchFromMcpOrDefault).toArray(String[]::new);
             mergeSuperMaps(notchName, notchSuperName, notchInterfaces);
         } catch (IOException e) {
             e.printStackTrace();
@@ -496,27 +901,57 @@ public class OptifineDevRemapper extends Remapper {
                 findAndMergeSuperMaps(map(parentThing));
             }
         }
-        Map<String, String> methodMap = new HashMap<>();
-        Map<String, String> fieldMap = new HashMap<>();
-        for (String parentThing : allParents) {
-            if (methodNameMaps.containsKey(parentThing)) {
-                methodMap.putAll(methodNameMaps.get(parentThing));
+        // parents are done, only this class needs to be locked
+        synchronized (classLock(name)) {
+            MemberMap methodMap = new MemberMap();
+            MemberMap fieldMap = new MemberMap();
+            MemberMap rawFields = rawFieldMap(name);
+            Set<Integer> typedFields = typedNames(rawFields);
+            for (String parentThing : allParents) {
+                MemberMap parentMethods = methodNameMaps.get(parentThing);
+                if (parentMethods != null) {
+                    methodMap.putAll(parentMethods);
+                }
+                MemberMap parentFields = fieldNameMaps.get(parentThing);
+                if (parentFields != null) {
+                    parentFields.forEach((key, value) -> {
+                        // a field this class declares without a known type hides the parent field of that name, otherwise the
+                        // parent's typed entry would win over it depending on whether it was added before this map was made
+                        int fieldName = MemberMap.name(key);
+                        if (rawFields == null || MemberMap.desc(key) == MemberMap.NO_DESC || typedFields.contains(fieldName)
+                                || !rawFields.containsKey(MemberMap.key(fieldName, MemberMap.NO_DESC))) {
+                            fieldMap.put(key, value);
+                        }
+                    });
+                }
             }
-            if (fieldNameMaps.containsKey(parentThing)) {
-                fieldMap.putAll(fieldNameMaps.get(parentThing));
+            MemberMap rawMethods = rawMethodMap(name);
+            if (rawMethods != null) {
+                methodMap.putAll(rawMethods);
             }
+            if (rawFields != null) {
+                fieldMap.putAll(rawFields);
+            }
+            methodNameMaps.put(name, methodMap);
+            fieldNameMaps.put(name, fieldMap);
         }
-        if (rawMethodMaps.containsKey(name)) {
-            methodMap.putAll(rawMethodMaps.get(name));
-        }
-        if (rawFieldMaps.containsKey(name)) {
-            fieldMap.putAll(rawFieldMaps.get(name));
-        }
-        methodNameMaps.put(name, new HashMap<>(methodMap));
-        fieldNameMaps.put(name, new HashMap<>(fieldMap));
         //        System.out.printf("Maps: %s %s\n", name, methodMap);
     }
 
+    // names the map has an entry with a descriptor for
+    private static Set<Integer> typedNames(MemberMap map) {
+        if (map == null) {
+            return Collections.emptySet();
+        }
+        Set<Integer> names = new HashSet<>();
+        map.forEach((key, value) -> {
+            if (MemberMap.desc(key) != MemberMap.NO_DESC) {
+                names.add(MemberMap.name(key));
+            }
+        });
+        return names;
+    }
+
     public String notchFromMcp(String className) {
         return classNameMapInverse.get(className);
     }
@@ -530,8 +965,10 @@ public class OptifineDevRemapper extends Remapper {
         if (oldType.equals(newType)) {
             return fType;
         }
-        Map<String, String> newClassMap = fieldDescriptions.computeIfAbsent(newType, k -> new HashMap<>());
-        newClassMap.put(newName, fType);
+        Map<String, String> newClassMap = fieldDescriptions.computeIfAbsent(newType, k -> new ConcurrentHashMap<>());
+        if (fType != null) {
+            newClassMap.put(newName, fType);
+        }
         return fType;
     }
 }
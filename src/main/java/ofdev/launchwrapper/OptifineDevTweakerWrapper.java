@@ -4,6 +4,8 @@ import net.minecraft.launchwrapper.IClassTransformer;
 import net.minecraft.launchwrapper.ITweaker;
 import net.minecraft.launchwrapper.Launch;
 import net.minecraft.launchwrapper.LaunchClassLoader;
+import ofdev.common.ClassDump;
+import ofdev.common.Jfr;
 import ofdev.common.Utils;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
@@ -17,7 +19,6 @@ import org.objectweb.asm.tree.MethodNode;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.UncheckedIOException;
 import java.net.JarURLConnection;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -73,6 +74,7 @@ public class OptifineDevTweakerWrapper implements ITweaker {
 
     // called from ASM
     @SuppressWarnings("unused") public static void initOptiTransformer(Object ofTransformer) {
+        Object initEvent = Jfr.beginOptiFineInit();
         OptifineDevTransformerWrapper.ofTransformer = (IClassTransformer) ofTransformer;
         try {
             @SuppressWarnings("unchecked") Class<? extends IClassTransformer> ofTransformerClass =
@@ -81,7 +83,8 @@ public class OptifineDevTweakerWrapper implements ITweaker {
             URL ofUrl = ofTransformer.getClass().getProtectionDomain().getCodeSource().getLocation();
 
             JarURLConnection connection = (JarURLConnection) ofUrl.openConnection();
-            ZipFile file = new ZipFile(new File(connection.getJarFileURL().toURI()));
+            File ofJar = new File(connection.getJarFileURL().toURI());
+            ZipFile file = new ZipFile(ofJar);
             Utils.setFieldValue(ofTransformerClass, "ofZipFile", ofTransformer, file);
 
             Class<?> ofPatcher = Launch.classLoader.findClass("optifine.Patcher");
@@ -94,21 +97,27 @@ public class OptifineDevTweakerWrapper implements ITweaker {
             //System.out.println("Ignore the above, OptiFine should run anyway");
             Utils.setFieldValue(ofTransformer.getClass(), "instance", null, ofTransformer);
 
+            PrebuiltJar prebuilt = PrebuiltJar.find(ofJar.toPath(), OptifineDevTransformerWrapper.MC_JAR);
+            if (prebuilt != null) {
+                // classes that don't match the prebuilt ones are still transformed, just without the cache
+                OptifineDevTransformerWrapper.usePrebuilt(prebuilt);
+            } else {
+                OptifineDevTransformerWrapper.initTransformCache(ofJar.toPath());
+                OptifineDevTransformerWrapper.startWarmup(file);
+            }
+
         } catch (IOException | URISyntaxException | ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
+        Jfr.endOptiFineInit(initEvent, "launchwrapper");
     }
 
     public static Path CLASS_DUMP_LOCATION;
 
     @Override public void acceptOptions(List<String> args, File gameDir, File assetsDir, String profile) {
-        try {
-            Path classDump = Paths.get(".").toAbsolutePath().normalize().resolve(".optifineDev.classes");
-            Utils.rm(classDump);
-            CLASS_DUMP_LOCATION = classDump;
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
+        // only removed if this run doesn't dump, otherwise ClassDumpWriter rewrites what changed and removes stale classes at shutdown
+        CLASS_DUMP_LOCATION = Paths.get(".").toAbsolutePath().normalize().resolve(".optifineDev.classes");
+        ClassDump.prepare(CLASS_DUMP_LOCATION);
         Utils.checkAndNotifyExtractedOptifineJar(Launch.classLoader);
     }
 
@@ -0,0 +1,132 @@
+package ofdev.launchwrapper;
+
+import static ofdev.common.Utils.LOGGER;
+
+import net.minecraft.launchwrapper.Launch;
+import ofdev.common.TransformCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Background transformation of everything OptiFine patches or replaces, started as soon as the OptiFine transformer is set up.
+ * Enabled with -Dofdev.warmupParallelism=N.
+ * <p>
+ * The input is the class as LaunchClassLoader would load it from classpath. If a transformer that runs before us changes
+ * the class, the warmed up result doesn't match and the class is transformed inline as usual. Same for classes that aren't
+ * done yet when they are loaded.
+ */
+class OptifineDevWarmup {
+
+    static final int PARALLELISM = Integer.getInteger("ofdev.warmupParallelism", 0);
+
+    private final OptifineDevTransformerWrapper transformer;
+    private final Map<String, Ready> ready = new ConcurrentHashMap<>();
+    // classes that were already loaded, results for these are no longer needed
+    private final Set<String> claimed = ConcurrentHashMap.newKeySet();
+
+    private OptifineDevWarmup(OptifineDevTransformerWrapper transformer) {
+        this.transformer = transformer;
+    }
+
+    static OptifineDevWarmup start(ZipFile optifineZip, OptifineDevTransformerWrapper transformer) {
+        OptifineDevWarmup warmup = new OptifineDevWarmup(transformer);
+        ForkJoinPool pool = new ForkJoinPool(PARALLELISM);
+        LOGGER.info("Starting OptiFine class warmup with parallelism {}", PARALLELISM);
+        pool.execute(() -> {
+            long start = System.nanoTime();
+            List<String> names = findPatchedClasses(optifineZip);
+            AtomicInteger done = new AtomicInteger();
+            List<ForkJoinTask<?>> tasks = new ArrayList<>(names.size());
+            for (String name : names) {
+                tasks.add(ForkJoinTask.adapt(() -> {
+                    if (warmup.prepare(name)) {
+                        done.incrementAndGet();
+                    }
+                }).fork());
+            }
+            tasks.forEach(ForkJoinTask::join);
+            pool.shutdown();
+            LOGGER.info("Warmed up {} of {} OptiFine classes in {} ms", done.get(), names.size(), (System.nanoTime() - start) / 1000000);
+        });
+        return warmup;
+    }
+
+    // MCP names of classes OptiFine replaces (class files in the jar) or patches (patch/*.xdelta), and OptiFine's own classes
+    static List<String> findPatchedClasses(ZipFile optifineZip) {
+        OptifineDevRemapper remapper = OptifineDevRemapper.notchMcp();
+        Set<String> names = new LinkedHashSet<>();
+        Enumeration<? extends ZipEntry> entries = optifineZip.entries();
+        while (entries.hasMoreElements()) {
+            String entry = entries.nextElement().getName();
+            String internalName;
+            if (entry.startsWith("patch/") && entry.endsWith(".class.xdelta")) {
+                internalName = entry.substring("patch/".length(), entry.length() - ".class.xdelta".length());
+            } else if (entry.endsWith(".class") && !entry.startsWith("optifine/") && !entry.startsWith("notch/") && !entry.startsWith("srg/")) {
+                internalName = entry.substring(0, entry.length() - ".class".length());
+            } else {
+                continue;
+            }
+            String name = remapper.map(internalName).replace('/', '.');
+            if (OptifineDevTransformerWrapper.isOptifineClass(name)) {
+                names.add(name);
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    private boolean prepare(String name) {
+        if (claimed.contains(name)) {
+            return false;
+        }
+        try {
+            byte[] basicClass = Launch.classLoader.getClassBytes(name);
+            if (basicClass == null) {
+                return false;
+            }
+            TransformCache.Entry result = transformer.transformCached(name, name, basicClass);
+            ready.put(name, new Ready(basicClass, result));
+            if (claimed.contains(name)) {
+                ready.remove(name);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not warm up {}, it will be transformed when loaded: {}", name, e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * @return the warmed up result for this class, or null if it isn't available or was computed from different input
+     */
+    TransformCache.Entry take(String name, byte[] basicClass) {
+        claimed.add(name);
+        Ready result = ready.remove(name);
+        if (result == null || !Arrays.equals(result.input, basicClass)) {
+            return null;
+        }
+        return result.output;
+    }
+
+    private static class Ready {
+        final byte[] input;
+        final TransformCache.Entry output;
+
+        Ready(byte[] input, TransformCache.Entry output) {
+            this.input = input;
+            this.output = output;
+        }
+    }
+}
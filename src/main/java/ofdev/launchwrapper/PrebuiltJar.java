@@ -0,0 +1,247 @@
+package ofdev.launchwrapper;
+
+import static ofdev.common.Utils.LOGGER;
+
+import ofdev.common.JarIndex;
+import ofdev.common.TransformCache;
+import ofdev.common.Utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.CodeSource;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Deobfuscated OptiFine classes written ahead of time by {@link OptifineDevDeobfuscator}, used instead of transforming them at runtime
+ * when the jar was made from the same OptiFine jar, Minecraft jar, mappings and version of OptiFineDevTweaker.
+ * <p>
+ * Looked up in {@code -Dofdev.prebuilt}, which is either a jar or a directory of them, by default the prebuilt directory in the cache
+ * directory. Disabled with {@code -Dofdev.skipPrebuilt=true}.
+ * <p>
+ * The main section of the manifest has hashes of the inputs, and each class has its own section with the hash of the class it was
+ * made from and its transform flags. A class that doesn't match what LaunchClassLoader gives us, for example because a transformer
+ * ran before us or the Forge jar is different, is transformed at runtime as usual. Classes that aren't in the jar at all are
+ * not touched by OptiFine, deobfuscating those would only rewrite the same class.
+ * <p>
+ * LaunchWrapper only. On ModLauncher OptiFine transforms the classes with its own transformation service, which gets them from
+ * ModLauncher as ClassNodes, there the OptiFine stage is kept in the transform cache instead.
+ */
+final class PrebuiltJar {
+
+    static final boolean ENABLED = !Boolean.getBoolean("ofdev.skipPrebuilt");
+    private static final String PREBUILT_PROPERTY = System.getProperty("ofdev.prebuilt");
+
+    // bump whenever the layout or the transformation output changes
+    private static final String FORMAT_VERSION = "1";
+
+    static final Attributes.Name FORMAT = new Attributes.Name("OptiFineDev-Prebuilt");
+    static final Attributes.Name TWEAKER_VERSION = new Attributes.Name("OptiFineDev-Version");
+    static final Attributes.Name OPTIFINE_HASH = new Attributes.Name("OptiFine-SHA1");
+    static final Attributes.Name MINECRAFT_HASH = new Attributes.Name("Minecraft-SHA1");
+    static final Attributes.Name MAPPINGS_HASH = new Attributes.Name("Mappings-SHA1");
+    static final Attributes.Name INPUT_HASH = new Attributes.Name("Input-Hash");
+    static final Attributes.Name FLAGS = new Attributes.Name("Flags");
+
+    // for classes that weren't on classpath when the jar was made, they are always transformed at runtime
+    static final String NO_INPUT = "none";
+
+    private final JarIndex jar;
+    // by class name, in the same form LaunchClassLoader uses
+    private final Map<String, Attributes> entries;
+
+    private PrebuiltJar(JarIndex jar, Map<String, Attributes> entries) {
+        this.jar = jar;
+        this.entries = entries;
+    }
+
+    static Path defaultLocation() {
+        return Utils.cacheDir().resolve("prebuilt");
+    }
+
+    /**
+     * @return prebuilt jar made from these inputs, or null if there is none
+     */
+    static PrebuiltJar find(Path optifineJar, Path minecraftJar) {
+        if (!ENABLED) {
+            return null;
+        }
+        try {
+            List<Path> candidates = candidates(PREBUILT_PROPERTY == null ? defaultLocation() : Paths.get(PREBUILT_PROPERTY));
+            if (candidates.isEmpty()) {
+                return null;
+            }
+            long start = System.nanoTime();
+            Attributes inputs = inputs(optifineJar, minecraftJar);
+            for (Path candidate : candidates) {
+                PrebuiltJar prebuilt = open(candidate, inputs);
+                if (prebuilt != null) {
+                    LOGGER.info("Using prebuilt OptiFine classes from {}, {} classes, checked in {} ms", candidate, prebuilt.entries.size(),
+                            (System.nanoTime() - start) / 1000000);
+                    return prebuilt;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Could not look for prebuilt OptiFine jar, OptiFine will be transformed at runtime", e);
+        }
+        return null;
+    }
+
+    private static List<Path> candidates(Path location) throws IOException {
+        if (Files.isRegularFile(location)) {
+            return Collections.singletonList(location);
+        }
+        if (!Files.isDirectory(location)) {
+            if (PREBUILT_PROPERTY != null) {
+                LOGGER.warn("Prebuilt OptiFine jar location {} from ofdev.prebuilt property doesn't exist", location);
+            }
+            return Collections.emptyList();
+        }
+        try (Stream<Path> files = Files.list(location)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".jar")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static PrebuiltJar open(Path file, Attributes inputs) {
+        try {
+            JarIndex jar = JarIndex.open(file);
+            Manifest manifest;
+            try (InputStream in = jar.openStream("META-INF/MANIFEST.MF")) {
+                if (in == null) {
+                    LOGGER.debug("{} has no manifest, not a prebuilt OptiFine jar", file);
+                    return null;
+                }
+                manifest = new Manifest(in);
+            }
+            Attributes main = manifest.getMainAttributes();
+            if (!FORMAT_VERSION.equals(main.getValue(FORMAT))) {
+                LOGGER.debug("{} is not a prebuilt OptiFine jar of this version", file);
+                return null;
+            }
+            for (Map.Entry<Object, Object> input : inputs.entrySet()) {
+                if (!input.getValue().equals(main.get(input.getKey()))) {
+                    LOGGER.info("Not using prebuilt OptiFine jar {}, {} is {} but it was made from {}", file, input.getKey(),
+                            input.getValue(), main.get(input.getKey()));
+                    return null;
+                }
+            }
+            Map<String, Attributes> entries = new HashMap<>();
+            for (Map.Entry<String, Attributes> entry : manifest.getEntries().entrySet()) {
+                String entryName = entry.getKey();
+                if (entryName.endsWith(".class")) {
+                    entries.put(entryName.substring(0, entryName.length() - ".class".length()).replace('/', '.'), entry.getValue());
+                }
+            }
+            return new PrebuiltJar(jar, entries);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not read prebuilt OptiFine jar {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Hashes of everything the output depends on, except for the classes themselves. The Minecraft jar and mappings are
+     * hashed by content, so that a jar made on another machine can be used.
+     */
+    static Attributes inputs(Path optifineJar, Path minecraftJar) throws IOException {
+        Attributes inputs = new Attributes();
+        inputs.put(FORMAT, FORMAT_VERSION);
+        inputs.put(TWEAKER_VERSION, tweakerVersion());
+        inputs.put(OPTIFINE_HASH, contentHash(optifineJar));
+        inputs.put(MINECRAFT_HASH, contentHash(minecraftJar));
+        inputs.put(MAPPINGS_HASH, mappingsHash());
+        return inputs;
+    }
+
+    private static String tweakerVersion() {
+        Package pkg = PrebuiltJar.class.getPackage();
+        String version = pkg == null ? null : pkg.getImplementationVersion();
+        if (version == null) {
+            // the package may have been defined without the manifest, read it from our own jar
+            version = jarVersion();
+        }
+        return version == null ? "unknown" : version;
+    }
+
+    private static String jarVersion() {
+        CodeSource source = PrebuiltJar.class.getProtectionDomain().getCodeSource();
+        if (source == null || source.getLocation() == null) {
+            return null;
+        }
+        try {
+            Path jar = Paths.get(source.getLocation().toURI());
+            if (!Files.isRegularFile(jar)) {
+                return null;
+            }
+            try (JarFile file = new JarFile(jar.toFile())) {
+                Manifest manifest = file.getManifest();
+                return manifest == null ? null : manifest.getMainAttributes().getValue(Attributes.Name.IMPLEMENTATION_VERSION);
+            }
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            LOGGER.debug("Could not read OptiFineDevTweaker version from its jar", e);
+            return null;
+        }
+    }
+
+    // same sources OptifineDevRemapper loads, without loading them
+    private static String mappingsHash() throws IOException {
+        String mappings = System.getProperty("ofdev.mappings");
+        if (mappings != null) {
+            return contentHash(Paths.get(mappings)) + "/" + System.getProperty("ofdev.mappingsNamespaces");
+        }
+        String notchMcp = System.getProperty("net.minecraftforge.gradle.GradleStart.srg.notch-mcp");
+        if (notchMcp != null) {
+            return contentHash(Paths.get(notchMcp));
+        }
+        String srgMcp = System.getProperty("net.minecraftforge.gradle.GradleStart.srg.srg-mcp");
+        if (srgMcp == null) {
+            throw new IllegalStateException("Current version of ForgeGradle is not supported! Please report us!");
+        }
+        // notch-srg comes from Forge jar of that version
+        return Utils.mcVersion() + "/" + contentHash(Paths.get(srgMcp));
+    }
+
+    private static String contentHash(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return TransformCache.contentHash(in);
+        }
+    }
+
+    static String inputHash(byte[] basicClass) {
+        return basicClass == null ? NO_INPUT : Long.toHexString(TransformCache.quickHash(basicClass));
+    }
+
+    boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * @return the prebuilt class, or null if it's not in the jar or was made from a different class
+     */
+    TransformCache.Entry get(String name, byte[] basicClass) throws IOException {
+        Attributes attributes = entries.get(name);
+        if (attributes == null) {
+            return null;
+        }
+        if (!inputHash(basicClass).equals(attributes.getValue(INPUT_HASH))) {
+            LOGGER.debug("Prebuilt {} was made from a different class, transforming it at runtime", name);
+            return null;
+        }
+        byte[] code = jar.read(name.replace('.', '/') + ".class");
+        if (code == null) {
+            return null;
+        }
+        return new TransformCache.Entry(Integer.parseInt(attributes.getValue(FLAGS)), code);
+    }
+}
@@ -0,0 +1,65 @@
+package ofdev.launchwrapper;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * SRG files, as written by ForgeGradle and found in the deobfuscation data of Forge. Every line stands on its own:
+ * <pre>
+ * CL: old/Class new/Class
+ * FD: old/Class/field new/Class/field
+ * MD: old/Class/method (desc) new/Class/method (desc)
+ * </pre>
+ * FD lines of XSRG have descriptors after both names. PK lines are skipped.
+ */
+final class SrgMappingSource extends MappingSource {
+
+    private SrgMappingSource(ByteBuffer buf, int from, int to) {
+        super(buf, from, to);
+    }
+
+    static List<MappingSource> split(ByteBuffer buf, int chunkSize) {
+        return split(buf, 0, chunkSize, false, (from, to) -> new SrgMappingSource(buf, from, to));
+    }
+
+    @Override
+    boolean next() {
+        while (nextLine(false)) {
+            // an indented line has an empty first token when split
+            if (indent != 0 || tokens < 3) {
+                continue;
+            }
+            if (tokenIs(0, "CL")) {
+                classRecord(1, 2);
+                return true;
+            }
+            if (tokenIs(0, "MD") && tokens >= 4 && member(Kind.METHOD, 1, 2, 3)) {
+                return true;
+            }
+            if (tokenIs(0, "FD") && member(Kind.FIELD, 1, tokens >= 5 ? 2 : -1, tokens >= 5 ? 3 : 2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean member(Kind kind, int oldToken, int descToken, int newToken) {
+        int oldSlash = slash(oldToken);
+        int newSlash = slash(newToken);
+        if (oldSlash < 0 || newSlash < 0) {
+            return false;
+        }
+        this.kind = kind;
+        ownerStart = starts[oldToken];
+        ownerEnd = oldSlash;
+        nameStart = oldSlash + 1;
+        nameEnd = ends[oldToken];
+        descStart = descToken < 0 ? -1 : starts[descToken];
+        descEnd = descToken < 0 ? -1 : ends[descToken];
+        newOwnerStart = starts[newToken];
+        newOwnerEnd = newSlash;
+        newNameStart = newSlash + 1;
+        newNameEnd = ends[newToken];
+        return true;
+    }
+}
@@ -0,0 +1,202 @@
+package ofdev.launchwrapper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interns member names and descriptors used by the mappings to dense int ids, so that member tables can be keyed by primitives.
+ * Looking up the id of an existing string doesn't allocate, and neither does looking up ASCII text straight from a buffer.
+ * <p>
+ * Thread safe. Lookups don't lock, interning a new string does. A lookup that races with interning of the same string
+ * may not see it yet, but never sees a wrong id.
+ */
+final class SymbolTable {
+
+    private volatile Table table;
+    private int size; // guarded by this
+
+    SymbolTable() {
+        this(1024);
+    }
+
+    SymbolTable(int expectedSize) {
+        table = new Table(MemberMap.tableSize(expectedSize));
+    }
+
+    /**
+     * @return id of the string, or -1 if it's not in the table
+     */
+    int id(String name) {
+        int id = table.find(name);
+        if (id == Table.INCOMPLETE) {
+            synchronized (this) {
+                id = table.find(name);
+            }
+        }
+        return id < 0 ? -1 : id;
+    }
+
+    int intern(String name) {
+        int id = table.find(name);
+        if (id >= 0) {
+            return id;
+        }
+        synchronized (this) {
+            Table t = table;
+            id = t.find(name);
+            if (id >= 0) {
+                return id;
+            }
+            if (size == t.names.length) {
+                t = table = t.grow(size);
+            }
+            id = size++;
+            t.insert(name, id);
+            return id;
+        }
+    }
+
+    /**
+     * Same as {@link #id(String)} for the UTF-8 text between from and to in the buffer.
+     */
+    int id(ByteBuffer buf, int from, int to) {
+        if (!isAscii(buf, from, to)) {
+            return id(decode(buf, from, to));
+        }
+        int hash = hash(buf, from, to);
+        int id = table.find(buf, from, to, hash);
+        if (id == Table.INCOMPLETE) {
+            synchronized (this) {
+                id = table.find(buf, from, to, hash);
+            }
+        }
+        return id < 0 ? -1 : id;
+    }
+
+    /**
+     * Same as {@link #intern(String)} for the UTF-8 text between from and to in the buffer, only makes a string of it if it's new.
+     */
+    int intern(ByteBuffer buf, int from, int to) {
+        if (isAscii(buf, from, to)) {
+            int id = table.find(buf, from, to, hash(buf, from, to));
+            if (id >= 0) {
+                return id;
+            }
+        }
+        return intern(decode(buf, from, to));
+    }
+
+    private static boolean isAscii(ByteBuffer buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // String.hashCode of ASCII text
+    private static int hash(ByteBuffer buf, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + buf.get(i);
+        }
+        return h;
+    }
+
+    private static String decode(ByteBuffer buf, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buf.get(from + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    String name(int id) {
+        String name = table.names[id];
+        if (name == null) {
+            synchronized (this) {
+                name = table.names[id];
+            }
+        }
+        return name;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    // open addressing, a slot holds id + 1, 0 is empty. Never more than half full.
+    private static final class Table {
+        static final int INCOMPLETE = -2;
+
+        final String[] names;
+        final int[] slots;
+        final int mask;
+
+        Table(int capacity) {
+            slots = new int[capacity];
+            names = new String[capacity / 2];
+            mask = capacity - 1;
+        }
+
+        // when the slot is visible before the name, another thread is just adding it
+        int find(String name) {
+            int i = MemberMap.mix(name.hashCode()) & mask;
+            for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+                String existing = names[slot - 1];
+                if (existing == null) {
+                    return INCOMPLETE;
+                }
+                if (existing == name || existing.equals(name)) {
+                    return slot - 1;
+                }
+            }
+            return -1;
+        }
+
+        // same for ASCII text in a buffer, with the hash of its string
+        int find(ByteBuffer buf, int from, int to, int hash) {
+            int i = MemberMap.mix(hash) & mask;
+            for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+                String existing = names[slot - 1];
+                if (existing == null) {
+                    return INCOMPLETE;
+                }
+                if (equals(existing, buf, from, to)) {
+                    return slot - 1;
+                }
+            }
+            return -1;
+        }
+
+        private static boolean equals(String name, ByteBuffer buf, int from, int to) {
+            if (name.length() != to - from) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != buf.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void insert(String name, int id) {
+            names[id] = name;
+            int i = MemberMap.mix(name.hashCode()) & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = id + 1;
+        }
+
+        Table grow(int size) {
+            Table t = new Table(slots.length * 2);
+            for (int id = 0; id < size; id++) {
+                t.insert(names[id], id);
+            }
+            return t;
+        }
+    }
+}
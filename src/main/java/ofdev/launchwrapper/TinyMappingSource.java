@@ -0,0 +1,109 @@
+package ofdev.launchwrapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tiny v2 files, as used by Loom style toolchains. Columns are separated by tabs, the header names the namespaces, and members are
+ * indented under their class with the descriptor in the first namespace:
+ * <pre>
+ * tiny	2	0	official	srg	named
+ * c	a	net/minecraft/src/C_1_	net/minecraft/Foo
+ * 	f	I	b	f_1_	count
+ * 	m	(I)La;	c	m_1_	create
+ * 		p	1		size
+ * </pre>
+ * An empty name means the element has no name in that namespace, such records are skipped. Properties after the header,
+ * parameters, local variables and comments are skipped too. Escaped names are not supported, no Minecraft mappings need them.
+ */
+final class TinyMappingSource extends MappingSource {
+
+    // columns before the names, the kind of a class and the kind and descriptor of a member
+    private static final int CLASS_NAMES = 1;
+    private static final int MEMBER_NAMES = 2;
+
+    private final int namespaces;
+    private final int fromColumn;
+    private final int toColumn;
+
+    // class of the member lines that follow, -1 before the first one
+    private int classStart = -1, classEnd;
+    private int newClassStart, newClassEnd;
+
+    private TinyMappingSource(ByteBuffer buf, int from, int to, int namespaces, int fromColumn, int toColumn) {
+        super(buf, from, to);
+        this.namespaces = namespaces;
+        this.fromColumn = fromColumn;
+        this.toColumn = toColumn;
+    }
+
+    static List<MappingSource> split(ByteBuffer buf, String header, String from, String to, int chunkSize) throws IOException {
+        String[] parts = header.split("\t");
+        List<String> names = Arrays.asList(parts).subList(3, parts.length);
+        int namespaces = names.size();
+        int fromColumn = namespace(names, from, 0);
+        int toColumn = namespace(names, to, namespaces - 1);
+        return split(buf, header.getBytes(StandardCharsets.UTF_8).length, chunkSize, true,
+                (start, end) -> new TinyMappingSource(buf, start, end, namespaces, fromColumn, toColumn));
+    }
+
+    @Override
+    boolean next() {
+        while (nextLine(true)) {
+            if (indent == 0) {
+                classStart = -1;
+                if (tokens < CLASS_NAMES + namespaces || !tokenIs(0, "c")) {
+                    continue;
+                }
+                int fromToken = CLASS_NAMES + fromColumn;
+                int toToken = CLASS_NAMES + toColumn;
+                if (starts[fromToken] == ends[fromToken]) {
+                    continue;
+                }
+                classStart = starts[fromToken];
+                classEnd = ends[fromToken];
+                // members of a class without a new name still can have one
+                boolean renamed = starts[toToken] != ends[toToken];
+                newClassStart = renamed ? starts[toToken] : classStart;
+                newClassEnd = renamed ? ends[toToken] : classEnd;
+                if (renamed) {
+                    classRecord(fromToken, toToken);
+                    return true;
+                }
+            } else if (indent == 1 && classStart >= 0 && tokens >= MEMBER_NAMES + namespaces && member()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean member() {
+        if (tokenIs(0, "m")) {
+            kind = Kind.METHOD;
+        } else if (tokenIs(0, "f")) {
+            kind = Kind.FIELD;
+        } else {
+            return false;
+        }
+        int fromToken = MEMBER_NAMES + fromColumn;
+        int toToken = MEMBER_NAMES + toColumn;
+        if (starts[fromToken] == ends[fromToken] || starts[toToken] == ends[toToken]) {
+            return false;
+        }
+        ownerStart = classStart;
+        ownerEnd = classEnd;
+        nameStart = starts[fromToken];
+        nameEnd = ends[fromToken];
+        // descriptors are only in the first namespace
+        descStart = fromColumn == 0 ? starts[1] : -1;
+        descEnd = fromColumn == 0 ? ends[1] : -1;
+        newOwnerStart = newClassStart;
+        newOwnerEnd = newClassEnd;
+        newNameStart = starts[toToken];
+        newNameEnd = ends[toToken];
+        return true;
+    }
+}
@@ -0,0 +1,187 @@
+package ofdev.launchwrapper;
+
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.RETURN;
+
+import ofdev.common.TransformMetrics;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.commons.ClassRemapper;
+import org.objectweb.asm.commons.Remapper;
+import org.objectweb.asm.commons.RemappingClassAdapter;
+
+/**
+ * Deobfuscates OptiFine transformed class to MCP names and reapplies Forge access transformers to it, in one streaming pass
+ * from ClassReader to ClassWriter.
+ * <p>
+ * Vanilla and Forge classes are only read as far as member headers, to find out what access transformers changed. If that
+ * makes some private method accessible, OptiFine output is read the same way first, because calls to the method need
+ * to be changed to INVOKEVIRTUAL and some of them may come before the method itself.
+ */
+final class TransformPipeline {
+
+    private static final int HEADERS_ONLY = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    // 1.7.10 has a name conflict with superclass and the field shadows parent class field
+    // but optifine uses the parent class field to set it's own
+    private static final Remapper VIDEO_SETTINGS_FIXER = new Remapper() {
+        @Override
+        public String mapFieldName(String owner, String name, String desc) {
+            if ((owner.startsWith("optifine") ||
+                    owner.startsWith("shadersmod") || owner.equals("net/minecraft/client/gui/GuiVideoSettings")
+                    || owner.equals("bef")) && name.equals("fontRendererObj")) {
+                return "fontRendererObj_OF";
+            }
+            return super.mapFieldName(owner, name, desc);
+        }
+    };
+
+    /**
+     * @param name name of the class
+     * @param ofTransformedCode class as OptiFine transformer returned it
+     * @param vanillaCode vanilla class from Minecraft jar
+     * @param forgeCode class as it was given to us, with Forge patches and access transformers applied
+     * @param accessIndex access changes known from earlier launches, may be null
+     * @return deobfuscated OptiFine class with Forge access transformers
+     */
+    static byte[] transform(String name, byte[] ofTransformedCode, byte[] vanillaCode, byte[] forgeCode, AccessChangeIndex accessIndex) {
+        TransformMetrics.begin(TransformMetrics.Stage.ACCESS_RECONSTRUCTION);
+        AccessChanges changes = accessIndex == null ? null : accessIndex.get(name, forgeCode);
+        if (changes == null) {
+            changes = AccessChanges.between(readHeaders(vanillaCode, true), readHeaders(forgeCode, false));
+            if (accessIndex != null) {
+                accessIndex.put(name, forgeCode, changes);
+            }
+        }
+        MemberTable invokeSpecialFixes = null;
+        if (changes.mayOpenPrivateMethods()) {
+            invokeSpecialFixes = changes.invokeSpecialFixes(readHeaders(ofTransformedCode, true));
+        }
+        TransformMetrics.end(TransformMetrics.Stage.ACCESS_RECONSTRUCTION);
+
+        ClassWriter classWriter = new ClassWriter(0);
+        ClassVisitor cv = classWriter;
+        if (name.equals("Reflector") || name.equals("EntityUtils")) {
+            cv = new StaticInitFixer(cv, name.equals("Reflector"));
+        }
+        if (!changes.isEmpty()) {
+            cv = new AccessFixer(cv, changes, invokeSpecialFixes);
+        }
+        // access changes are applied in the same pass
+        TransformMetrics.begin(TransformMetrics.Stage.DEOBFUSCATION);
+        new ClassReader(ofTransformedCode).accept(deobfuscate(cv), ClassReader.EXPAND_FRAMES);
+        TransformMetrics.end(TransformMetrics.Stage.DEOBFUSCATION);
+        TransformMetrics.begin(TransformMetrics.Stage.WRITE);
+        byte[] output = classWriter.toByteArray();
+        TransformMetrics.end(TransformMetrics.Stage.WRITE);
+        return output;
+    }
+
+    static ClassHeaders readHeaders(byte[] code, boolean deobfuscate) {
+        ClassHeaders headers = new ClassHeaders();
+        new ClassReader(code).accept(deobfuscate ? deobfuscate(headers) : headers, HEADERS_ONLY);
+        return headers;
+    }
+
+    // this attempts to transform all the code but it shouldn't be an issue
+    // (cacpixel) it's a big issue because some MCP name can be conflicted with other NOTCH names
+    private static ClassVisitor deobfuscate(ClassVisitor cv) {
+        @SuppressWarnings("deprecation") RemappingClassAdapter remapAdapter = new OptifineDevAdapter(cv);
+        return new ClassRemapper(remapAdapter, VIDEO_SETTINGS_FIXER);
+    }
+
+    private static final class AccessFixer extends ClassVisitor {
+
+        private final AccessChanges changes;
+        private final MemberTable invokeSpecialFixes;
+
+        AccessFixer(ClassVisitor cv, AccessChanges changes, MemberTable invokeSpecialFixes) {
+            super(Opcodes.ASM5, cv);
+            this.changes = changes;
+            this.invokeSpecialFixes = invokeSpecialFixes;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+            if (changes.classChange != null) {
+                access = changes.classChange.apply(access);
+            }
+            super.visit(version, access, name, signature, superName, interfaces);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            AccessChange change = changes.field(name, desc);
+            if (change != null) {
+                access = change.apply(access);
+            }
+            return super.visitField(access, name, desc, signature, value);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            AccessChange change = changes.method(name, desc);
+            if (change != null) {
+                access = change.apply(access);
+            }
+            MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+            if (mv == null || invokeSpecialFixes == null || invokeSpecialFixes.size() == 0) {
+                return mv;
+            }
+            return new MethodVisitor(Opcodes.ASM5, mv) {
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+                    if (opcode == INVOKESPECIAL && invokeSpecialFixes.contains(name, desc)) {
+                        opcode = INVOKEVIRTUAL;
+                    }
+                    super.visitMethodInsn(opcode, owner, name, desc, itf);
+                }
+            };
+        }
+    }
+
+    // Reflector needs a hook at the end of static init, 1.7.10 EntityUtils has srg named strings there
+    private static final class StaticInitFixer extends ClassVisitor {
+
+        private final boolean reflector;
+
+        StaticInitFixer(ClassVisitor cv, boolean reflector) {
+            super(Opcodes.ASM5, cv);
+            this.reflector = reflector;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions) {
+            MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+            if (mv == null || !name.equals("<clinit>")) {
+                return mv;
+            }
+            return new MethodVisitor(Opcodes.ASM5, mv) {
+                private boolean hookAdded;
+
+                @Override
+                public void visitInsn(int opcode) {
+                    if (reflector && opcode == RETURN && !hookAdded) {
+                        hookAdded = true;
+                        super.visitMethodInsn(INVOKESTATIC, "ofdev/launchwrapper/UtilsLW", "fixReflector", "()V", false);
+                    }
+                    super.visitInsn(opcode);
+                }
+
+                @Override
+                public void visitLdcInsn(Object cst) {
+                    if (!reflector && cst instanceof String) {
+                        cst = SrgMappings.getNameFromSrg((String) cst);
+                    }
+                    super.visitLdcInsn(cst);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package ofdev.launchwrapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TSRG files of MCPConfig, and TSRG2 which starts with a header that names the namespaces. Members are indented under their class,
+ * method descriptors are in the first namespace:
+ * <pre>
+ * tsrg2 obf srg
+ * a net/minecraft/Foo
+ * 	b field_1234_b
+ * 	c (I)La; func_5678_c
+ * 		static
+ * </pre>
+ * Packages of TSRG v1 (names ending with '/'), and parameters and other lines nested under members are skipped.
+ */
+final class TsrgMappingSource extends MappingSource {
+
+    private final int namespaces;
+    private final int fromColumn;
+    private final int toColumn;
+
+    // class of the member lines that follow, -1 before the first one
+    private int classStart = -1, classEnd;
+    private int newClassStart, newClassEnd;
+
+    private TsrgMappingSource(ByteBuffer buf, int from, int to, int namespaces, int fromColumn, int toColumn) {
+        super(buf, from, to);
+        this.namespaces = namespaces;
+        this.fromColumn = fromColumn;
+        this.toColumn = toColumn;
+    }
+
+    /**
+     * @param header first line of a TSRG2 file, null for TSRG v1 which has two namespaces and no names for them
+     */
+    static List<MappingSource> split(ByteBuffer buf, String header, String from, String to, int chunkSize) throws IOException {
+        if (header == null) {
+            return sources(buf, 0, 2, 0, 1, chunkSize);
+        }
+        String[] parts = header.split(" ");
+        List<String> names = Arrays.asList(parts).subList(1, parts.length);
+        return sources(buf, header.getBytes(StandardCharsets.UTF_8).length, names.size(), namespace(names, from, 0),
+                namespace(names, to, names.size() - 1), chunkSize);
+    }
+
+    private static List<MappingSource> sources(ByteBuffer buf, int bodyStart, int namespaces, int fromColumn, int toColumn, int chunkSize) {
+        return split(buf, bodyStart, chunkSize, true, (from, to) -> new TsrgMappingSource(buf, from, to, namespaces, fromColumn, toColumn));
+    }
+
+    @Override
+    boolean next() {
+        while (nextLine(false)) {
+            if (tokens == 0) {
+                continue;
+            }
+            if (indent == 0) {
+                if (tokens < namespaces || buf.get(ends[0] - 1) == '/') {
+                    classStart = -1;
+                    continue;
+                }
+                classRecord(fromColumn, toColumn);
+                classStart = ownerStart;
+                classEnd = ownerEnd;
+                newClassStart = newOwnerStart;
+                newClassEnd = newOwnerEnd;
+                return true;
+            }
+            if (indent == 1 && classStart >= 0 && member()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean member() {
+        // a method, or a field with a descriptor, has it after the first name
+        boolean method = tokens > 1 && buf.get(starts[1]) == '(';
+        boolean withDesc = method || tokens == namespaces + 1;
+        if (tokens < (withDesc ? namespaces + 1 : namespaces)) {
+            return false;
+        }
+        int fromToken = column(fromColumn, withDesc);
+        int toToken = column(toColumn, withDesc);
+        kind = method ? Kind.METHOD : Kind.FIELD;
+        ownerStart = classStart;
+        ownerEnd = classEnd;
+        nameStart = starts[fromToken];
+        nameEnd = ends[fromToken];
+        // descriptors are only in the first namespace
+        descStart = withDesc && fromColumn == 0 ? starts[1] : -1;
+        descEnd = withDesc && fromColumn == 0 ? ends[1] : -1;
+        newOwnerStart = newClassStart;
+        newOwnerEnd = newClassEnd;
+        newNameStart = starts[toToken];
+        newNameEnd = ends[toToken];
+        return true;
+    }
+
+    private static int column(int namespace, boolean withDesc) {
+        return withDesc && namespace > 0 ? namespace + 1 : namespace;
+    }
+}
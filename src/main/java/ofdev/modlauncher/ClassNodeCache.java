@@ -0,0 +1,46 @@
+package ofdev.modlauncher;
+
+import ofdev.common.TransformCache;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+
+import java.util.Collection;
+
+// TransformCache for ClassNodes, entries are keyed by transformation stage, class name and serialized input class.
+// Only worth it for OptiFine's own transform, a key costs a ClassWriter pass over the input and a hit a SHA-1, a read and a ClassReader
+class ClassNodeCache {
+
+    private final TransformCache cache;
+
+    private ClassNodeCache(TransformCache cache) {
+        this.cache = cache;
+    }
+
+    static ClassNodeCache open(Collection<?> inputs) {
+        TransformCache cache = TransformCache.open("modlauncher", inputs);
+        return cache == null ? null : new ClassNodeCache(cache);
+    }
+
+    static byte[] toBytes(ClassNode node) {
+        // frames and maxs are kept from the node as they are, cached output is read back and loaded by ModLauncher
+        ClassWriter cw = new ClassWriter(0);
+        node.accept(cw);
+        return cw.toByteArray();
+    }
+
+    static ClassNode toClassNode(byte[] code) {
+        ClassNode node = new ClassNode();
+        new ClassReader(code).accept(node, ClassReader.EXPAND_FRAMES);
+        return node;
+    }
+
+    byte[] get(String stage, String className, byte[] input) {
+        TransformCache.Entry entry = cache.get(stage + ":" + className, input);
+        return entry == null ? null : entry.data();
+    }
+
+    void put(String stage, String className, byte[] input, byte[] output) {
+        cache.put(stage + ":" + className, input, output, 0);
+    }
+}
@@ -5,13 +5,12 @@ import static ofdev.common.Utils.LOGGER;
 import cpw.mods.modlauncher.Launcher;
 import cpw.mods.modlauncher.TransformationServiceDecorator;
 import cpw.mods.modlauncher.api.IEnvironment;
-import cpw.mods.modlauncher.api.INameMappingService;
 import cpw.mods.modlauncher.api.ITransformationService;
 import cpw.mods.modlauncher.api.ITransformer;
 import cpw.mods.modlauncher.api.ITransformerVotingContext;
 import cpw.mods.modlauncher.api.TransformerVoteResult;
+import ofdev.common.TransformMetrics;
 import ofdev.common.Utils;
-import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.commons.ClassRemapper;
 import org.objectweb.asm.tree.ClassNode;
 
@@ -26,13 +25,11 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -43,15 +40,13 @@ public class OFDevRetransformer implements ITransformer<ClassNode> {
 
     OFDevRetransformer(IEnvironment env) {
         Utils.checkAndNotifyExtractedOptifineJar(getClass().getClassLoader());
-        this.targets = new HashSet<>(findOptiFineClasses(env));
-        Optional<BiFunction<INameMappingService.Domain, String, String>> srgtomcp = env.findNameMapping("srg");
-        if (!srgtomcp.isPresent()) {
-            throw new IllegalStateException("No srgtomcp mappings found! Are you in dev environment?");
-        }
-        this.remapper = new OfDevRemapper(srgtomcp.get());
+        Path ofPath = findOptiFineJar(env);
+        Set<String> classNames = findOptiFineClasses(ofPath, env);
+        this.targets = classNames.stream().map(Target::targetClass).collect(Collectors.toSet());
+        this.remapper = OFDevTransformationService.remapper(env);
     }
 
-    private static Collection<? extends Target> findOptiFineClasses(IEnvironment env) {
+    private static Path findOptiFineJar(IEnvironment env) {
         List<Map<String, String>> modlist = env.getProperty(IEnvironment.Keys.MODLIST.get())
                 .orElseThrow(() -> new IllegalStateException("modlist not found"));
         Map<String, String> optifine = modlist.stream().filter(x -> x.get("name").equals("OptiFine")).findAny()
@@ -133,11 +128,18 @@ public class OFDevRetransformer implements ITransformer<ClassNode> {
             optifineFile = optifineFile.substring(1);
         }
         Path gamedir = env.getProperty(IEnvironment.Keys.GAMEDIR.get()).orElseThrow(() -> new IllegalStateException("gamedir not found"));
-
-        Set<String> newTargets = new HashSet<>();
         try {
             Path ofPath = gamedir.resolve("mods").resolve(optifineFile).toRealPath();
             System.out.println("OptiFine file: " + ofPath);
+            return ofPath;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Set<String> findOptiFineClasses(Path ofPath, IEnvironment env) {
+        Set<String> newTargets = new HashSet<>();
+        try {
             try (FileSystem fs = FileSystems.newFileSystem(ofPath, env.getClass().getClassLoader())) {
                 for (Path root : fs.getRootDirectories()) {
                     try (Stream<Path> paths = Files.walk(root)) {
@@ -171,17 +173,27 @@ public class OFDevRetransformer implements ITransformer<ClassNode> {
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
-        return newTargets.stream().map(Target::targetClass).collect(Collectors.toList());
+        return newTargets;
     }
 
     @Override public ClassNode transform(ClassNode input, ITransformerVotingContext context) {
+        TransformMetrics.beginClass(input.name);
+        ClassNode output = remap(input);
+        // OptiFine's own classes, only deobfuscated
+        TransformMetrics.endClass("modlauncher-retransform", -1, -1, false);
+        return output;
+    }
+
+    // not cached, serializing the input for a cache key costs as much as the single remapping pass
+    private ClassNode remap(ClassNode input) {
         ClassNode output = new ClassNode();
         ClassRemapper classRemapper = new ClassRemapper(output, remapper);
+        TransformMetrics.begin(TransformMetrics.Stage.DEOBFUSCATION);
         input.accept(classRemapper);
+        TransformMetrics.end(TransformMetrics.Stage.DEOBFUSCATION);
         try {
-            ClassWriter cw = new ClassWriter(0); // don't compute frames/maxs, this code is only for decompiler and IDE
-            output.accept(cw);
-            Utils.dumpBytecode(OFDevTransformationService.CLASS_DUMP_LOCATION, output.name, cw.toByteArray());
+            // the output only exists for the dump, don't serialize it if it's not going to be dumped
+            OFDevTransformationService.dumpClass(output.name, () -> ClassNodeCache.toBytes(output));
         } catch (Throwable t) {
             LOGGER.catching(t); // in case there is anything broken about the code, it's better for it to fail in modlauncher than here
         }
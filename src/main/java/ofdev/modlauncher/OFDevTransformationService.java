@@ -4,6 +4,9 @@ import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
 import static org.objectweb.asm.Opcodes.ACC_SUPER;
 import static org.objectweb.asm.Opcodes.ALOAD;
 import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.F_APPEND;
+import static org.objectweb.asm.Opcodes.IFNULL;
 import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
 import static org.objectweb.asm.Opcodes.INVOKESTATIC;
 import static org.objectweb.asm.Opcodes.RETURN;
@@ -14,6 +17,10 @@ import cpw.mods.modlauncher.api.INameMappingService;
 import cpw.mods.modlauncher.api.ITransformationService;
 import cpw.mods.modlauncher.api.ITransformer;
 import cpw.mods.modlauncher.api.IncompatibleEnvironmentException;
+import ofdev.common.ClassDump;
+import ofdev.common.JarIndex;
+import ofdev.common.Jfr;
+import ofdev.common.TransformMetrics;
 import ofdev.common.Utils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -32,11 +39,9 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.nio.file.FileSystem;
-import java.nio.file.FileSystems;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -45,17 +50,23 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import java.util.zip.ZipFile;
 public class OFDevTransformationService implements ITransformationService {
 
     private static final Logger LOGGER = LogManager.getLogger();
     private static Path mcJar;
-    private static FileSystem mcJarFileSystem;
+    private static JarIndex mcJarIndex;
     public static Path CLASS_DUMP_LOCATION;
 
     private static IEnvironment env;
+    private static volatile OfDevRemapper remapper;
     private static BiConsumer<ClassNode, ClassNode> fixMemberAccess;
 
+    private static Path optifineJar;
+    static ClassNodeCache classCache;
+    private static final ThreadLocal<PendingTransform> pendingTransform = new ThreadLocal<>();
+
     @Override public String name() {
         return "OptiFineDevTransformationService";
     }
@@ -64,13 +75,18 @@ public class OFDevTransformationService implements ITransformationService {
         Path fgCacheDir = environment.getProperty(IEnvironment.Keys.ASSETSDIR.get()).map(Path::getParent).orElse(null);
         mcJar = Utils.findMinecraftJar(fgCacheDir);
         try {
-            mcJarFileSystem = FileSystems.newFileSystem(mcJar, OFDevTransformationService.class.getClassLoader());
-
-            if (Utils.DUMP_CLASSES) {
-                Path classDump = Paths.get(".").toAbsolutePath().normalize().resolve(".optifineDev.classes");
-                Utils.rm(classDump);
-                CLASS_DUMP_LOCATION = classDump;
-            }
+            mcJarIndex = JarIndex.open(mcJar);
+
+            List<Object> cacheInputs = new ArrayList<>();
+            cacheInputs.add(optifineJar);
+            cacheInputs.add(mcJar);
+            cacheInputs.addAll(OfDevRemapper.mappingInputs());
+            classCache = ClassNodeCache.open(cacheInputs);
+
+            // set even when not dumping, ClassDump can be switched on at runtime
+            // only removed if this run doesn't dump, otherwise ClassDumpWriter rewrites what changed and removes stale classes at shutdown
+            CLASS_DUMP_LOCATION = Paths.get(".").toAbsolutePath().normalize().resolve(".optifineDev.classes");
+            ClassDump.prepare(CLASS_DUMP_LOCATION);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -113,7 +129,9 @@ public class OFDevTransformationService implements ITransformationService {
                     Field ofZipFileField = oldTransformer.getClass().getDeclaredField("ofZipFile");
                     ofZipFileField.setAccessible(true);
                     ZipFile ofZipFile = (ZipFile) ofZipFileField.get(oldTransformer);
+                    optifineJar = Paths.get(ofZipFile.getName()).toAbsolutePath();
 
+                    Object initEvent = Jfr.beginOptiFineInit();
                     Class<?> newClass = makeNewOptiFineTransformer(oldTransformer.getClass().getClassLoader());
                     Constructor<?> constr = newClass.getConstructor(ZipFile.class);
                     Object newTransformer;
@@ -124,6 +142,7 @@ public class OFDevTransformationService implements ITransformationService {
                         newTransformer = constr.newInstance(ofZipFile, envIn);
                     }
                     transformerField.set(null, newTransformer);
+                    Jfr.endOptiFineInit(initEvent, "modlauncher");
 
                     LOGGER.info("Finding OptiFine AccessFixer");
 
@@ -162,35 +181,105 @@ public class OFDevTransformationService implements ITransformationService {
         if (!path.startsWith("/")) {
             path = '/' + path;
         }
-        Path file = mcJarFileSystem.getPath(path);
         try {
-            return Files.newInputStream(file);
+            InputStream stream = mcJarIndex.openStream(path.substring(1));
+            if (stream != null) {
+                return stream;
+            }
         } catch (IOException e) {
-            return OFDevTransformationService.class.getResourceAsStream(path);
+            LOGGER.warn("Could not read {} from Minecraft jar: {}", path, e.toString());
         }
+        return OFDevTransformationService.class.getResourceAsStream(path);
+    }
+
+    // called from asm-generated code before OptiFine transforms the class, non-null result skips the OptiFine transformer entirely
+    @SuppressWarnings("unused") public static ClassNode findCachedTransform(ClassNode input) {
+        TransformMetrics.beginClass(input.name);
+        if (classCache == null) {
+            // OptiFine transformer runs between this and wrapOptiFineTransform
+            TransformMetrics.begin(TransformMetrics.Stage.OPTIFINE_TRANSFORM);
+            return null;
+        }
+        byte[] inputBytes = ClassNodeCache.toBytes(input);
+        byte[] cached = classCache.get("optifine", input.name, inputBytes);
+        if (cached != null) {
+            ClassNode output = ClassNodeCache.toClassNode(cached);
+            dumpClass(output.name, cached);
+            // every class that gets here is patched by OptiFine
+            TransformMetrics.endClass("modlauncher", inputBytes.length, cached.length, true);
+            return output;
+        }
+        // OptiFine may modify the input node, so keep the serialized original for storing the result
+        pendingTransform.set(new PendingTransform(input, inputBytes));
+        TransformMetrics.begin(TransformMetrics.Stage.OPTIFINE_TRANSFORM);
+        return null;
     }
 
     @SuppressWarnings("unused") public static ClassNode wrapOptiFineTransform(ClassNode transformed, ClassNode original) {
+        TransformMetrics.end(TransformMetrics.Stage.OPTIFINE_TRANSFORM);
+        PendingTransform pending = pendingTransform.get();
+        pendingTransform.remove();
         ClassNode output = new ClassNode();
-        Optional<BiFunction<INameMappingService.Domain, String, String>> srgtomcp = env.findNameMapping("srg");
-        if (!srgtomcp.isPresent()) {
-            throw new IllegalStateException("No srgtomcp mappings found! Are you in dev environment?");
-        }
-        OfDevRemapper remapper = new OfDevRemapper(srgtomcp.get());
-        ClassRemapper classRemapper = new ClassRemapper(output, remapper);
+        ClassRemapper classRemapper = new ClassRemapper(output, remapper(env));
+        TransformMetrics.begin(TransformMetrics.Stage.DEOBFUSCATION);
         transformed.accept(classRemapper);
+        TransformMetrics.end(TransformMetrics.Stage.DEOBFUSCATION);
+        TransformMetrics.begin(TransformMetrics.Stage.ACCESS_RECONSTRUCTION);
         fixMemberAccess.accept(original, output);
+        TransformMetrics.end(TransformMetrics.Stage.ACCESS_RECONSTRUCTION);
 
+        int outputSize = -1;
         try {
-            ClassWriter cw = new ClassWriter(0); // don't compute frames/maxs, this code is only for decompiler and IDE
-            output.accept(cw);
-            Utils.dumpBytecode(CLASS_DUMP_LOCATION, output.name, cw.toByteArray());
+            if (classCache != null && pending != null && pending.input == original) {
+                TransformMetrics.begin(TransformMetrics.Stage.WRITE);
+                byte[] outputBytes = ClassNodeCache.toBytes(output);
+                TransformMetrics.end(TransformMetrics.Stage.WRITE);
+                outputSize = outputBytes.length;
+                classCache.put("optifine", original.name, pending.inputBytes, outputBytes);
+                dumpClass(output.name, outputBytes);
+            } else {
+                // only serialized if it's going to be dumped
+                dumpClass(output.name, () -> ClassNodeCache.toBytes(output));
+            }
         } catch (Throwable t) {
             LOGGER.catching(t); // in case there is anything broken about the code, it's better for it to fail in modlauncher than here
         }
+        TransformMetrics.endClass("modlauncher", pending == null ? -1 : pending.inputBytes.length, outputSize, true);
         return output;
     }
 
+    // one for the whole session, shared with OFDevRetransformer, so that srg names are looked up in Forge only once
+    static OfDevRemapper remapper(IEnvironment env) {
+        OfDevRemapper result = remapper;
+        if (result != null) {
+            return result;
+        }
+        synchronized (OFDevTransformationService.class) {
+            if (remapper == null) {
+                Optional<BiFunction<INameMappingService.Domain, String, String>> srgtomcp = env.findNameMapping("srg");
+                if (!srgtomcp.isPresent()) {
+                    throw new IllegalStateException("No srgtomcp mappings found! Are you in dev environment?");
+                }
+                remapper = new OfDevRemapper(srgtomcp.get());
+            }
+            return remapper;
+        }
+    }
+
+    static void dumpClass(String name, byte[] code) {
+        dumpClass(name, () -> code);
+    }
+
+    static void dumpClass(String name, Supplier<byte[]> code) {
+        TransformMetrics.begin(TransformMetrics.Stage.DUMP);
+        try {
+            Utils.dumpBytecode(CLASS_DUMP_LOCATION, name, code);
+        } catch (Throwable t) {
+            LOGGER.catching(t);
+        }
+        TransformMetrics.end(TransformMetrics.Stage.DUMP);
+    }
+
     @SuppressWarnings("rawtypes") @Override public List<ITransformer> transformers() {
         return Collections.singletonList(new OFDevRetransformer(env));
     }
@@ -209,6 +298,10 @@ public class OFDevTransformationService implements ITransformationService {
                 }
 
                 @Override public ClassNode transform(ClassNode input, ITransformerVotingContext context) {
+                    ClassNode cached = OFDevTransformationService.findCachedTransform(input);
+                    if (cached != null) {
+                        return cached;
+                    }
                     return OFDevTransformationService.wrapOptiFineTransform(super.transform(input, context), input);
                 }
             }
@@ -291,6 +384,21 @@ public class OFDevTransformationService implements ITransformationService {
             mv.visitCode();
             Label l0 = new Label();
             mv.visitLabel(l0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitMethodInsn(INVOKESTATIC, "ofdev/modlauncher/OFDevTransformationService",
+                    "findCachedTransform",
+                    "(Lorg/objectweb/asm/tree/ClassNode;)Lorg/objectweb/asm/tree/ClassNode;",
+                    false);
+            mv.visitVarInsn(ASTORE, 3);
+            Label cachedStart = new Label();
+            mv.visitLabel(cachedStart);
+            mv.visitVarInsn(ALOAD, 3);
+            Label notCached = new Label();
+            mv.visitJumpInsn(IFNULL, notCached);
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitInsn(ARETURN);
+            mv.visitLabel(notCached);
+            mv.visitFrame(F_APPEND, 1, new Object[]{"org/objectweb/asm/tree/ClassNode"}, 0, null);
             mv.visitVarInsn(ALOAD, 0);
             mv.visitVarInsn(ALOAD, 1);
             mv.visitVarInsn(ALOAD, 2);
@@ -314,7 +422,8 @@ public class OFDevTransformationService implements ITransformationService {
             mv.visitLocalVariable("this", "L" + name + ";", null, l0, l1, 0);
             mv.visitLocalVariable("input", "Lorg/objectweb/asm/tree/ClassNode;", null, l0, l1, 1);
             mv.visitLocalVariable("context", "Lcpw/mods/modlauncher/api/ITransformerVotingContext;", null, l0, l1, 1);
-            mv.visitMaxs(3, 3);
+            mv.visitLocalVariable("cached", "Lorg/objectweb/asm/tree/ClassNode;", null, cachedStart, l1, 3);
+            mv.visitMaxs(3, 4);
             mv.visitEnd();
         }
         cw.visitEnd();
@@ -323,6 +432,16 @@ public class OFDevTransformationService implements ITransformationService {
         return cl.define(name.replace('/', '.'), cw.toByteArray());
     }
 
+    private static class PendingTransform {
+        final ClassNode input;
+        final byte[] inputBytes;
+
+        PendingTransform(ClassNode input, byte[] inputBytes) {
+            this.input = input;
+            this.inputBytes = inputBytes;
+        }
+    }
+
     private static class ASMClassLoader extends ClassLoader {
 
         private ASMClassLoader(ClassLoader parent) {
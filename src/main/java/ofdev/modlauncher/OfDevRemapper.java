@@ -1,9 +1,18 @@
 package ofdev.modlauncher;
 
 import cpw.mods.modlauncher.api.INameMappingService;
+import ofdev.common.TransformMetrics;
 import org.objectweb.asm.commons.Remapper;
 
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
 
 public class OfDevRemapper extends Remapper {
 
@@ -12,26 +21,71 @@ public class OfDevRemapper extends Remapper {
 
     private final BiFunction<INameMappingService.Domain, String, String> srg2mcp;
 
+    // srg2mcp results by srg name. They never change during a session and every OptiFine class asks for mostly the same names,
+    // so one remapper is shared by everything that remaps OptiFine classes
+    private final Map<String, String> methodNames = new ConcurrentHashMap<>();
+    private final Map<String, String> fieldNames = new ConcurrentHashMap<>();
+    private final Map<String, String> methodOrFieldNames = new ConcurrentHashMap<>();
+
+    private final UnaryOperator<String> methodLookup;
+    private final UnaryOperator<String> fieldLookup;
+    private final UnaryOperator<String> methodOrFieldLookup;
+
     OfDevRemapper(BiFunction<INameMappingService.Domain, String, String> srg2mcp) {
         this.srg2mcp = srg2mcp;
+        this.methodLookup = name -> srg2mcp.apply(INameMappingService.Domain.METHOD, name);
+        this.fieldLookup = name -> srg2mcp.apply(INameMappingService.Domain.FIELD, name);
+        this.methodOrFieldLookup = name -> {
+            String method = srg2mcp.apply(INameMappingService.Domain.METHOD, name);
+            if (method.equals(name)) {
+                // record components are technically methods but mapped as fields
+                method = srg2mcp.apply(INameMappingService.Domain.FIELD, name);
+            }
+            return method;
+        };
+    }
+
+    private static String memoized(Map<String, String> memo, String name, UnaryOperator<String> lookup) {
+        String mapped = memo.get(name);
+        if (mapped != null) {
+            TransformMetrics.count(TransformMetrics.Counter.SRG_NAME_HIT);
+            return mapped;
+        }
+        TransformMetrics.count(TransformMetrics.Counter.SRG_NAME_MISS);
+        mapped = lookup.apply(name);
+        if (mapped != null) {
+            memo.putIfAbsent(name, mapped);
+        }
+        return mapped;
+    }
+
+    // what the srg2mcp function is built from, as far as we can tell without asking Forge, used to key persistent caches
+    static List<Object> mappingInputs() {
+        List<Object> inputs = new ArrayList<>();
+        inputs.add("skipRemapHacks=" + SKIP_REMAP_HACKS);
+        String mcpToSrg = System.getenv("MCP_TO_SRG");
+        inputs.add(mcpToSrg == null ? null : Paths.get(mcpToSrg));
+        inputs.add(System.getenv("MCP_MAPPINGS"));
+        try {
+            URL fmlLoader = Class.forName("net.minecraftforge.fml.loading.FMLLoader", false, OfDevRemapper.class.getClassLoader())
+                    .getProtectionDomain().getCodeSource().getLocation();
+            inputs.add(fmlLoader.getProtocol().equals("file") ? Paths.get(fmlLoader.toURI()) : fmlLoader);
+        } catch (ClassNotFoundException | URISyntaxException | RuntimeException e) {
+            inputs.add(null);
+        }
+        return inputs;
     }
 
     @Override public String mapInvokeDynamicMethodName(String name, String desc) {
-        return srg2mcp.apply(INameMappingService.Domain.METHOD, name);
+        return memoized(methodNames, name, methodLookup);
     }
 
     /*@Override*/ @SuppressWarnings("unused") public String mapRecordComponentName(String owner, String name, String descriptor) {
-        return srg2mcp.apply(INameMappingService.Domain.METHOD, name);
+        return memoized(methodNames, name, methodLookup);
     }
 
     @Override public String mapMethodName(final String owner, final String name, final String descriptor) {
-        String newName = applyConflictResolutionHacks(owner, name);
-        String method = srg2mcp.apply(INameMappingService.Domain.METHOD, newName);
-        if (method.equals(newName)) {
-            // record components are technically methods but mapped as fields
-            method = srg2mcp.apply(INameMappingService.Domain.FIELD, newName);
-        }
-        return method;
+        return memoized(methodOrFieldNames, applyConflictResolutionHacks(owner, name), methodOrFieldLookup);
     }
 
     private static String applyConflictResolutionHacks(String owner, String name) {
@@ -67,7 +121,7 @@ public class OfDevRemapper extends Remapper {
     }
 
     @Override public String mapFieldName(final String owner, final String name, final String descriptor) {
-        return srg2mcp.apply(INameMappingService.Domain.FIELD, name);
+        return memoized(fieldNames, name, fieldLookup);
     }
 
     @Override public String map(final String internalName) {
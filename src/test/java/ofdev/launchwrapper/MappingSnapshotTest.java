@@ -0,0 +1,75 @@
+package ofdev.launchwrapper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A snapshot written from parsed mappings reads back to the same tables.
+ */
+public class MappingSnapshotTest {
+
+    @Test
+    public void readsBackWhatWasWritten() throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        Map<String, MemberMap> methods = new HashMap<>();
+        Map<String, MemberMap> fields = new HashMap<>();
+        Map<String, String> classMap = new HashMap<>();
+        Map<String, String> classMapInverse = new HashMap<>();
+        BenchmarkFixture.remapper().parseMappings(MappingSource.map(BenchmarkFixture.NOTCH_MCP_FILE), symbols, methods, fields,
+                classMap, classMapInverse, true);
+        // much longer than any real name
+        StringBuilder longName = new StringBuilder("net/minecraft/");
+        while (longName.length() < 1000) {
+            longName.append("Long");
+        }
+        classMap.put("zz", longName.toString());
+        classMapInverse.put(longName.toString(), "zz");
+
+        Path dir = Files.createTempDirectory("ofdev-snapshot-test");
+        Path file = dir.resolve("mappings.bin");
+        try {
+            new MappingSnapshot(classMap, classMapInverse, symbols, methods, fields).write(file);
+            MappingSnapshot snapshot = MappingSnapshot.read(file);
+
+            assertEquals(classMap, snapshot.classNameMap);
+            assertEquals(classMapInverse, snapshot.classNameMapInverse);
+            assertEquals(names(symbols), names(snapshot.symbols));
+            assertEquals(methods.size(), snapshot.methodMaps.classes());
+            assertEquals(fields.size(), snapshot.fieldMaps.classes());
+            for (Map.Entry<String, MemberMap> e : methods.entrySet()) {
+                assertEquals(e.getKey(), entries(e.getValue()), entries(snapshot.methodMaps.read(e.getKey())));
+            }
+            for (Map.Entry<String, MemberMap> e : fields.entrySet()) {
+                assertEquals(e.getKey(), entries(e.getValue()), entries(snapshot.fieldMaps.read(e.getKey())));
+            }
+            assertNull(snapshot.methodMaps.read("not/a/Class"));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static List<String> names(SymbolTable symbols) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < symbols.size(); i++) {
+            names.add(symbols.name(i));
+        }
+        return names;
+    }
+
+    private static Map<Long, Integer> entries(MemberMap map) {
+        Map<Long, Integer> entries = new HashMap<>();
+        map.forEach(entries::put);
+        return entries;
+    }
+}
@@ -0,0 +1,173 @@
+package ofdev.launchwrapper;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the parsers find in small files of every format, written as "KIND owner.name:desc -> newOwner.newName".
+ */
+public class MappingSourceTest {
+
+    private static final String SRG = ""
+            + "PK: . net/minecraft/src\n"
+            + "CL: a net/minecraft/Foo\n"
+            + "FD: a/b net/minecraft/Foo/count\n"
+            + "FD: a/c I net/minecraft/Foo/size I\n"
+            + "MD: a/d (I)La; net/minecraft/Foo/create (I)Lnet/minecraft/Foo;\n";
+
+    private static final String TSRG = ""
+            + "pkg/ net/minecraft/\n"
+            + "a net/minecraft/Foo\n"
+            + "\tb count\n"
+            + "\tc (I)La; create\n";
+
+    private static final String TSRG2 = ""
+            + "tsrg2 obf srg named\n"
+            + "a net/minecraft/src/C_1_ net/minecraft/Foo\n"
+            + "\tb f_1_ count\n"
+            + "\td I f_2_ total\n"
+            + "\tc (I)La; m_1_ create\n"
+            + "\t\t0 o p_1_ size\n"
+            + "\t\tstatic\n"
+            + "e net/minecraft/src/C_2_ net/minecraft/Bar\n"
+            + "\tf ()V m_2_ go\n";
+
+    private static final String TINY = ""
+            + "tiny\t2\t0\tofficial\tsrg\tnamed\n"
+            + "c\ta\tnet/minecraft/src/C_1_\tnet/minecraft/Foo\n"
+            + "\tf\tI\tb\tf_1_\tcount\n"
+            + "\tm\t(I)La;\tc\tm_1_\tcreate\n"
+            + "\t\tp\t1\t\t\tsize\n"
+            + "\tf\tJ\tg\t\t\n"
+            + "c\td\t\t\n"
+            + "\tm\t()V\te\tm_2_\tgo\n";
+
+    @Test
+    public void srg() throws IOException {
+        assertEquals(Arrays.asList(
+                "CLASS a -> net/minecraft/Foo",
+                "FIELD a.b -> net/minecraft/Foo.count",
+                "FIELD a.c:I -> net/minecraft/Foo.size",
+                "METHOD a.d:(I)La; -> net/minecraft/Foo.create"
+        ), records(SRG, null, null));
+    }
+
+    @Test
+    public void tsrg() throws IOException {
+        assertEquals(Arrays.asList(
+                "CLASS a -> net/minecraft/Foo",
+                "FIELD a.b -> net/minecraft/Foo.count",
+                "METHOD a.c:(I)La; -> net/minecraft/Foo.create"
+        ), records(TSRG, null, null));
+    }
+
+    @Test
+    public void tsrg2() throws IOException {
+        assertEquals(Arrays.asList(
+                "CLASS a -> net/minecraft/Foo",
+                "FIELD a.b -> net/minecraft/Foo.count",
+                "FIELD a.d:I -> net/minecraft/Foo.total",
+                "METHOD a.c:(I)La; -> net/minecraft/Foo.create",
+                "CLASS e -> net/minecraft/Bar",
+                "METHOD e.f:()V -> net/minecraft/Bar.go"
+        ), records(TSRG2, null, null));
+        // descriptors are only known in the first namespace
+        assertEquals(Arrays.asList(
+                "CLASS net/minecraft/src/C_1_ -> net/minecraft/Foo",
+                "FIELD net/minecraft/src/C_1_.f_1_ -> net/minecraft/Foo.count",
+                "FIELD net/minecraft/src/C_1_.f_2_ -> net/minecraft/Foo.total",
+                "METHOD net/minecraft/src/C_1_.m_1_ -> net/minecraft/Foo.create",
+                "CLASS net/minecraft/src/C_2_ -> net/minecraft/Bar",
+                "METHOD net/minecraft/src/C_2_.m_2_ -> net/minecraft/Bar.go"
+        ), records(TSRG2, "srg", "named"));
+    }
+
+    @Test
+    public void tiny() throws IOException {
+        assertEquals(Arrays.asList(
+                "CLASS a -> net/minecraft/Foo",
+                "FIELD a.b:I -> net/minecraft/Foo.count",
+                "METHOD a.c:(I)La; -> net/minecraft/Foo.create",
+                // d has no name in the other namespaces, so only its method is renamed
+                "METHOD d.e:()V -> d.go"
+        ), records(TINY, null, null));
+        assertEquals(Arrays.asList(
+                "CLASS a -> net/minecraft/src/C_1_",
+                "FIELD a.b:I -> net/minecraft/src/C_1_.f_1_",
+                "METHOD a.c:(I)La; -> net/minecraft/src/C_1_.m_1_",
+                "METHOD d.e:()V -> d.m_2_"
+        ), records(TINY, "official", "srg"));
+    }
+
+    @Test
+    public void crlfLineEndings() throws IOException {
+        for (String text : Arrays.asList(SRG, TSRG, TSRG2, TINY)) {
+            assertEquals(records(text, null, null), records(text.replace("\n", "\r\n"), null, null));
+        }
+    }
+
+    @Test
+    public void chunksEndAtRecords() throws IOException {
+        for (String text : Arrays.asList(SRG, TSRG, TSRG2, TINY, TSRG2.replace("\n", "\r\n"))) {
+            List<String> whole = records(text, null, null);
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            for (int chunkSize = 1; chunkSize <= bytes.length; chunkSize++) {
+                assertEquals("chunks of " + chunkSize, whole, records(ByteBuffer.wrap(bytes), null, null, chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void fieldDescriptorsOfRecordsMakeTypedKeys() throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        Map<String, MemberMap> methods = new HashMap<>();
+        Map<String, MemberMap> fields = new HashMap<>();
+        BenchmarkFixture.remapper().parseMappings(ByteBuffer.wrap(TSRG2.getBytes(StandardCharsets.UTF_8)), symbols, methods, fields,
+                new HashMap<>(), new HashMap<>(), true);
+        MemberMap foo = fields.get("a");
+        assertEquals(symbols.id("total"), foo.get(MemberMap.key(symbols.id("d"), symbols.id("I"))));
+        assertEquals(symbols.id("total"), foo.get(MemberMap.key(symbols.id("d"), MemberMap.NO_DESC)));
+        assertEquals(symbols.id("count"), foo.get(MemberMap.key(symbols.id("b"), MemberMap.NO_DESC)));
+    }
+
+    private static List<String> records(String text, String from, String to) throws IOException {
+        return records(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), from, to, Integer.MAX_VALUE);
+    }
+
+    private static List<String> records(ByteBuffer buf, String from, String to, int chunkSize) throws IOException {
+        List<String> records = new ArrayList<>();
+        for (MappingSource source : MappingSource.open(buf, from, to, chunkSize)) {
+            while (source.next()) {
+                records.add(record(source));
+            }
+        }
+        return records;
+    }
+
+    private static String record(MappingSource r) {
+        if (r.kind == MappingSource.Kind.CLASS) {
+            return "CLASS " + text(r, r.ownerStart, r.ownerEnd) + " -> " + text(r, r.newOwnerStart, r.newOwnerEnd);
+        }
+        return r.kind + " " + text(r, r.ownerStart, r.ownerEnd) + "." + text(r, r.nameStart, r.nameEnd)
+                + (r.descStart < 0 ? "" : ":" + text(r, r.descStart, r.descEnd))
+                + " -> " + text(r, r.newOwnerStart, r.newOwnerEnd) + "." + text(r, r.newNameStart, r.newNameEnd);
+    }
+
+    private static String text(MappingSource r, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = r.buf.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
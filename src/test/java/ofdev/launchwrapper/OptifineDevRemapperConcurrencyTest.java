@@ -0,0 +1,111 @@
+package ofdev.launchwrapper;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Hammers one remapper from many threads with lookups that fill its caches, and checks every answer against a remapper that got
+ * the same queries on a single thread.
+ */
+public class OptifineDevRemapperConcurrencyTest {
+
+    private static final int THREADS = Math.max(8, Runtime.getRuntime().availableProcessors() * 2);
+
+    @Test
+    public void concurrentLookupsMatchSingleThreaded() throws Exception {
+        List<Function<OptifineDevRemapper, String>> queries = queries(BenchmarkFixture.MINECRAFT);
+
+        OptifineDevRemapper reference = newRemapper();
+        String[] expected = new String[queries.size()];
+        for (int q = 0; q < queries.size(); q++) {
+            expected[q] = queries.get(q).apply(reference);
+        }
+
+        OptifineDevRemapper remapper = newRemapper();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<String[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                long seed = t;
+                results.add(executor.submit(() -> {
+                    // every thread makes all queries, in an order of its own
+                    List<Integer> order = new ArrayList<>();
+                    for (int q = 0; q < queries.size(); q++) {
+                        order.add(q);
+                    }
+                    Collections.shuffle(order, new Random(seed));
+                    String[] actual = new String[queries.size()];
+                    start.await();
+                    for (int q : order) {
+                        actual[q] = queries.get(q).apply(remapper);
+                    }
+                    return actual;
+                }));
+            }
+            start.countDown();
+            for (Future<String[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // and nothing the threads left in the caches is broken
+        String[] after = new String[queries.size()];
+        for (int q = 0; q < queries.size(); q++) {
+            after[q] = queries.get(q).apply(remapper);
+        }
+        assertArrayEquals(expected, after);
+    }
+
+    private static OptifineDevRemapper newRemapper() {
+        // BenchmarkFixture also sets up the notch-mcp remapper the super maps are looked up with
+        BenchmarkFixture.remapper();
+        return new OptifineDevRemapper(BenchmarkFixture.NOTCH_MCP_FILE.toString(), null, true);
+    }
+
+    private static List<Function<OptifineDevRemapper, String>> queries(SyntheticMinecraft mc) {
+        SyntheticMinecraft.Namespace notch = SyntheticMinecraft.Namespace.NOTCH;
+        List<Function<OptifineDevRemapper, String>> queries = new ArrayList<>();
+        for (int i = 0; i < mc.classes(); i++) {
+            String owner = mc.className(notch, i);
+            String superName = mc.superName(notch, i);
+            queries.add(r -> {
+                r.mergeSuperMaps(owner, superName, new String[0]);
+                return owner;
+            });
+            for (int j = 0; j < SyntheticMinecraft.METHODS; j++) {
+                String name = mc.methodName(notch, i, j);
+                String desc = mc.methodDesc(notch, i, j);
+                queries.add(r -> r.mapMethodName(owner, name, desc));
+            }
+            for (int j = 0; j < SyntheticMinecraft.FIELDS; j++) {
+                String name = mc.fieldName(notch, i, j);
+                String desc = mc.fieldDesc(notch, i, j);
+                queries.add(r -> r.mapFieldName(owner, name, desc));
+                queries.add(r -> r.mapMemberFieldName(owner, name, desc));
+                // getFieldType, the way transformed code asks for it
+                queries.add(r -> String.valueOf(r.getStaticFieldType(owner, name, owner, name)));
+            }
+            // fields OptiFine adds, stored by whichever thread sees them first
+            for (int j = 0; j < 4; j++) {
+                String name = "ofField" + j;
+                queries.add(r -> r.mapMemberFieldName(owner, name, "I"));
+                queries.add(r -> r.mapFieldName(owner, name, "I"));
+            }
+        }
+        return queries;
+    }
+}